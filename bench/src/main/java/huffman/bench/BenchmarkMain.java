@@ -0,0 +1,74 @@
+package huffman.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class BenchmarkMain {
+    private static final Set<String> PER_TABLE = Set.of("treeInitialize", "getEncodings", "canonicalCodes");
+    private static final Map<String, Boolean> COMPRESSING = Map.of(
+        "encodeStatic", false, "decodeStatic", false, "encodeAdaptive", true, "decodeAdaptive", true);
+    private static final Map<String, Double> RATIOS = new HashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        final Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+        final Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.printf("%-24s %-8s %12s %10s %8s %14s %14s%n", "Benchmark", "Corpus", "ms/op", "MB/s", "ratio", "alloc MB/s", "alloc B/op");
+        for (RunResult run : results) {
+            final Result<?> primary = run.getPrimaryResult();
+            final String name = run.getParams().getBenchmark().substring(run.getParams().getBenchmark().lastIndexOf('.') + 1);
+            final String corpus = run.getParams().getParam("corpus");
+            final long bytes = Long.parseLong(run.getParams().getParam("size"));
+            final double millis = primary.getScore() * run.getParams().getTimeUnit().toNanos(1) / 1e6;
+            final boolean sized = !"EMPTY".equals(corpus) && !PER_TABLE.contains(name) && millis > 0;
+            final Boolean adaptive = COMPRESSING.get(name);
+            System.out.printf("%-24s %-8s %12.3f %10s %8s %14.1f %14.0f%n",
+                name, corpus, millis,
+                sized ? String.format("%.1f", bytes / 1e6 / (millis / 1e3)) : "-",
+                adaptive != null && !"EMPTY".equals(corpus) ? String.format("%.4f", ratio(Corpus.valueOf(corpus), (int)bytes, adaptive)) : "-",
+                secondary(run, "gc.alloc.rate"), secondary(run, "gc.alloc.rate.norm"));
+        }
+    }
+
+    private static double ratio(Corpus corpus, int size, boolean adaptive) throws Exception {
+        final String key = corpus + "/" + size + "/" + adaptive;
+        final Double known = RATIOS.get(key);
+        if (known != null) {
+            return known;
+        }
+        final Path source = Files.createTempFile("huffman-ratio", ".src");
+        final Path target = Files.createTempFile("huffman-ratio", ".huf");
+        try {
+            final byte[] data = corpus.generate(size, 1);
+            Files.write(source, data);
+            CodecBenchmark.encode(source, target, adaptive);
+            final double ratio = data.length == 0 ? 0. : (double)Files.size(target) / data.length;
+            RATIOS.put(key, ratio);
+            return ratio;
+        } finally {
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(target);
+        }
+    }
+
+    private static double secondary(RunResult run, String label) {
+        final Result<?> result = run.getSecondaryResults().get(label);
+        return result == null ? Double.NaN : result.getScore();
+    }
+}
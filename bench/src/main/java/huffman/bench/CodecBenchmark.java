@@ -0,0 +1,241 @@
+package huffman.bench;
+
+import huffman.CodeTable;
+import huffman.ContextModel;
+import huffman.HuffmanCoding;
+import huffman.HuffmanTree;
+import huffman.Progress;
+import huffman.ProgressableTask;
+import huffman.Table;
+import huffman.TableCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({"UNIFORM", "TEXT", "SKEWED", "SINGLE", "EMPTY"})
+    public Corpus corpus;
+
+    @Param({"16777216"})
+    public int size;
+
+    private Path directory;
+    private Path source;
+    private Path encoded;
+    private Path contextEncoded;
+    private Path wideEncoded;
+    private Path adaptiveEncoded;
+    private Path scratch;
+    private Path output;
+    private byte[] data;
+    private TableCounter counter;
+    private HuffmanTree tree;
+    private HuffmanCoding.Encode encode;
+    private byte[] deflated;
+    private int deflatedLength;
+    private byte[] inflated;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        data = corpus.generate(size, 1);
+        directory = Files.createTempDirectory("huffman-bench");
+        source = directory.resolve("source");
+        encoded = directory.resolve("encoded");
+        contextEncoded = directory.resolve("context");
+        wideEncoded = directory.resolve("wide");
+        adaptiveEncoded = directory.resolve("adaptive");
+        scratch = directory.resolve("scratch");
+        output = directory.resolve("output");
+        Files.write(source, data);
+
+        final HuffmanCoding coding = new HuffmanCoding();
+        encode = coding.getEncoder(source.toString(), encoded.toString());
+        final ProgressableTask.TaskPhase[] phases = encode.getPhases();
+        for (int i = 0; i < phases.length - 1; ++i) {
+            phases[i].run(new Progress());
+        }
+        counter = coding.getCounter();
+
+        final HuffmanCoding contextual = new HuffmanCoding();
+        contextual.setContextTables(ContextModel.DEFAULT_TABLES);
+        for (var phase : contextual.getEncoder(source.toString(), contextEncoded.toString()).getPhases()) {
+            phase.run(new Progress());
+        }
+
+        final HuffmanCoding wide = new HuffmanCoding();
+        wide.setSymbolWidth(Short.SIZE);
+        for (var phase : wide.getEncoder(source.toString(), wideEncoded.toString()).getPhases()) {
+            phase.run(new Progress());
+        }
+        encode(source, adaptiveEncoded, true);
+        tree = new HuffmanTree();
+        tree.initialize(counter, HuffmanCoding.DEFAULT_MAX_LENGTH);
+
+        deflated = new byte[data.length + data.length / 100 + 1024];
+        deflatedLength = deflate(data, deflated);
+        inflated = new byte[data.length];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        encode.cleanup();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>)files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public TableCounter readCounts() {
+        final HuffmanCoding coding = new HuffmanCoding();
+        coding.readCounts(source.toString(), new Progress());
+        return coding.getCounter();
+    }
+
+    @Benchmark
+    public HuffmanTree treeInitialize() {
+        final HuffmanTree built = new HuffmanTree();
+        built.initialize(counter, HuffmanCoding.DEFAULT_MAX_LENGTH);
+        return built;
+    }
+
+    @Benchmark
+    public Table<String> getEncodings() {
+        return tree.getEncodings();
+    }
+
+    @Benchmark
+    public CodeTable canonicalCodes() {
+        return tree.getCodeTable().canonical();
+    }
+
+    @Benchmark
+    public void writeToFile() throws Exception {
+        encode.getPhases()[3].run(new Progress());
+    }
+
+    @Benchmark
+    public void decodeToFile() throws Exception {
+        decode(encoded, HuffmanCoding.DecodeStrategy.TABLE);
+    }
+
+    @Benchmark
+    public void encodeStatic() throws Exception {
+        encode(source, scratch, false);
+    }
+
+    @Benchmark
+    public void encodeAdaptive() throws Exception {
+        encode(source, scratch, true);
+    }
+
+    @Benchmark
+    public void decodeStatic() throws Exception {
+        decode(encoded, HuffmanCoding.DecodeStrategy.TABLE);
+    }
+
+    @Benchmark
+    public void decodeAdaptive() throws Exception {
+        decode(adaptiveEncoded, HuffmanCoding.DecodeStrategy.TABLE);
+    }
+
+    @Benchmark
+    public void decodeToFileTreeWalk() throws Exception {
+        decode(encoded, HuffmanCoding.DecodeStrategy.TREE_WALK);
+    }
+
+    @Benchmark
+    public void decodeContextToFile() throws Exception {
+        decode(contextEncoded, HuffmanCoding.DecodeStrategy.TABLE);
+    }
+
+    @Benchmark
+    public void decodeWideToFile() throws Exception {
+        decode(wideEncoded, HuffmanCoding.DecodeStrategy.TABLE);
+    }
+
+    @Benchmark
+    public int deflaterHuffmanOnly() {
+        return deflate(data, deflated);
+    }
+
+    @Benchmark
+    public int inflaterHuffmanOnly() throws DataFormatException {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated, 0, deflatedLength);
+            return inflater.inflate(inflated);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    static void encode(Path source, Path target, boolean adaptive) throws Exception {
+        final HuffmanCoding coding = new HuffmanCoding();
+        coding.setAdaptive(adaptive);
+        final HuffmanCoding.Encode task = coding.getEncoder(source.toString(), target.toString());
+        try {
+            for (var phase : task.getPhases()) {
+                phase.run(new Progress());
+            }
+        } finally {
+            task.cleanup();
+        }
+    }
+
+    private void decode(Path file, HuffmanCoding.DecodeStrategy strategy) throws Exception {
+        final HuffmanCoding coding = new HuffmanCoding();
+        coding.setDecodeStrategy(strategy);
+        final HuffmanCoding.Decode decode = coding.getDecoder(file.toString(), output.toString());
+        try {
+            for (var phase : decode.getPhases()) {
+                phase.run(new Progress());
+            }
+        } finally {
+            decode.cleanup();
+        }
+    }
+
+    private static int deflate(byte[] input, byte[] output) {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setStrategy(Deflater.HUFFMAN_ONLY);
+            deflater.setInput(input);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                length += deflater.deflate(output, length, output.length - length);
+            }
+            return length;
+        } finally {
+            deflater.end();
+        }
+    }
+}
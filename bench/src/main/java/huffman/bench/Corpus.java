@@ -0,0 +1,79 @@
+package huffman.bench;
+
+import java.util.Random;
+
+public enum Corpus {
+    UNIFORM,
+    TEXT,
+    SKEWED,
+    SINGLE,
+    EMPTY;
+
+    private static final String[] WORDS = (
+        "the of and to a in is it you that he was for on are with as I his they be at one have this from or had by "
+        + "word but what some we can out other were all there when up use your how said an each she which do their time "
+        + "if will way about many then them write would like so these her long make thing see him two has look more day "
+        + "could go come did number sound no most people my over know water than call first who may down side been now "
+        + "find any new work part take get place made live where after back little only round man year came show every "
+        + "good me give our under name very through just form sentence great think say help low line differ turn cause "
+        + "much mean before move right boy old too same tell does set three want air well also play small end put home "
+        + "read hand port large spell add even land here must big high such follow act why ask men change went light kind"
+    ).split(" ");
+
+    public byte[] generate(int size, long seed) {
+        final Random random = new Random(seed);
+        switch (this) {
+            case UNIFORM -> {
+                final byte[] data = new byte[size];
+                random.nextBytes(data);
+                return data;
+            }
+            case TEXT -> {
+                final byte[] data = new byte[size];
+                final double[] weights = new double[WORDS.length];
+                double total = 0;
+                for (int i = 0; i < weights.length; ++i) {
+                    total += 1.0 / (i + 1);
+                    weights[i] = total;
+                }
+                int position = 0;
+                int sentence = 0;
+                while (position < size) {
+                    final double pick = random.nextDouble() * total;
+                    int word = 0;
+                    while (weights[word] < pick) {
+                        ++word;
+                    }
+                    final String text = WORDS[word];
+                    for (int i = 0; i < text.length() && position < size; ++i) {
+                        final char letter = text.charAt(i);
+                        data[position++] = (byte)(sentence == 0 && i == 0 ? Character.toUpperCase(letter) : letter);
+                    }
+                    sentence = ++sentence % (8 + random.nextInt(12));
+                    if (position < size) {
+                        data[position++] = (byte)(sentence == 0 ? '.' : ' ');
+                    }
+                    if (sentence == 0 && position < size) {
+                        data[position++] = (byte)(random.nextInt(6) == 0 ? '\n' : ' ');
+                    }
+                }
+                return data;
+            }
+            case SKEWED -> {
+                final byte[] data = new byte[size];
+                for (int i = 0; i < size; ++i) {
+                    data[i] = (byte)Math.min(255, (int)(-Math.log(1 - random.nextDouble()) * 2));
+                }
+                return data;
+            }
+            case SINGLE -> {
+                final byte[] data = new byte[size];
+                java.util.Arrays.fill(data, (byte)'a');
+                return data;
+            }
+            default -> {
+                return new byte[0];
+            }
+        }
+    }
+}
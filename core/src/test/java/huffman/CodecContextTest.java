@@ -0,0 +1,171 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CodecContextTest {
+    private static final int THREADS = 16;
+    private static final int JOBS_PER_THREAD = 20;
+    private static final int POOL_CAPACITY = 4;
+    private static final int MODES = 7;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void parallelJobsMatchSingleThreadedRun() throws Exception {
+        final List<Path> sources = corpus();
+        final CodecContext.Pool pool = new CodecContext.Pool(POOL_CAPACITY);
+        final Map<String, byte[]> expected = new HashMap<>();
+        for (Path source : sources) {
+            for (int mode = 0; mode < MODES; ++mode) {
+                final Path encoded = directory.resolve("reference-" + mode + "-" + source.getFileName());
+                run(coding(mode, pool).getEncoder(source.toString(), encoded.toString()));
+                expected.put(mode + "/" + source.getFileName(), Files.readAllBytes(encoded));
+            }
+        }
+
+        final ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<Integer>> pending = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; ++thread) {
+                final int id = thread;
+                pending.add(workers.submit(() -> {
+                    final Random random = new Random(id);
+                    for (int job = 0; job < JOBS_PER_THREAD; ++job) {
+                        final Path source = sources.get(random.nextInt(sources.size()));
+                        final int mode = random.nextInt(MODES);
+                        final Path encoded = directory.resolve(id + "-" + job + ".huf");
+                        final Path decoded = directory.resolve(id + "-" + job + ".out");
+                        run(coding(mode, pool).getEncoder(source.toString(), encoded.toString()));
+                        assertArrayEquals(expected.get(mode + "/" + source.getFileName()), Files.readAllBytes(encoded), "mode " + mode + " encode of " + source.getFileName());
+                        run(coding(mode, pool).getDecoder(encoded.toString(), decoded.toString()));
+                        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(decoded), "mode " + mode + " decode of " + source.getFileName());
+                        Files.delete(encoded);
+                        Files.delete(decoded);
+                    }
+                    return JOBS_PER_THREAD;
+                }));
+            }
+            int jobs = 0;
+            for (Future<Integer> future : pending) {
+                jobs += future.get();
+            }
+            assertEquals(THREADS * JOBS_PER_THREAD, jobs);
+        } finally {
+            workers.shutdownNow();
+        }
+        assertTrue(pool.getCreatedCount() <= POOL_CAPACITY);
+        assertEquals(pool.getCreatedCount(), pool.getIdleCount());
+    }
+
+    @Test
+    void exhaustedPoolCountsOverflowAndDropsIt() {
+        final CodecContext.Pool pool = new CodecContext.Pool(1, 1);
+        final CodecContext pooled = pool.acquire();
+        final CodecContext overflow = pool.acquire();
+        assertNotSame(pooled, overflow);
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getOverflowCount());
+        pool.release(pooled);
+        pool.release(overflow);
+        assertEquals(1, pool.getIdleCount());
+        assertSame(pooled, pool.acquire());
+    }
+
+    @Test
+    void acquireWaitsForReleasedContext() throws Exception {
+        final CodecContext.Pool pool = new CodecContext.Pool(1, 10_000);
+        final CodecContext held = pool.acquire();
+        final ExecutorService waiter = Executors.newSingleThreadExecutor();
+        try {
+            final Future<CodecContext> pending = waiter.submit(pool::acquire);
+            Thread.sleep(50);
+            pool.release(held);
+            assertSame(held, pending.get());
+            assertEquals(0, pool.getOverflowCount());
+        } finally {
+            waiter.shutdownNow();
+        }
+    }
+
+    private static void run(ProgressableTask task) throws Exception {
+        try {
+            for (var phase : task.getPhases()) {
+                phase.run(new Progress());
+            }
+        } finally {
+            task.cleanup();
+        }
+    }
+
+    private static HuffmanCoding coding(int mode, CodecContext.Pool pool) {
+        final HuffmanCoding coding = new HuffmanCoding(pool);
+        switch (mode) {
+            case 1 -> coding.setHeaderFormat(HuffmanCoding.HeaderFormat.V1);
+            case 2 -> coding.setDecodeStrategy(HuffmanCoding.DecodeStrategy.TREE_WALK);
+            case 3 -> coding.setAdaptive(true);
+            case 4 -> coding.setBlockSize(1 << 16);
+            case 5 -> coding.setMemoryMapped(true);
+            case 6 -> {
+                coding.setBlockSize(1 << 16);
+                coding.setMemoryMapped(true);
+            }
+            default -> {
+
+            }
+        }
+        return coding;
+    }
+
+    private List<Path> corpus() throws IOException {
+        final Random random = new Random(7006);
+        final List<Path> sources = new ArrayList<>();
+
+        final StringBuilder text = new StringBuilder();
+        final String[] words = {"huffman", "code", "table", "symbol", "block", "the", "a", "of", "length", "decode"};
+        while (text.length() < 300_000) {
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(8) == 0 ? ".\n" : " ");
+        }
+        sources.add(write("text.txt", text.toString().getBytes(StandardCharsets.UTF_8)));
+
+        final byte[] skewed = new byte[200_000];
+        for (int i = 0; i < skewed.length; ++i) {
+            skewed[i] = (byte)Math.min(255, (int)Math.abs(random.nextGaussian() * 6));
+        }
+        sources.add(write("skewed.bin", skewed));
+
+        final byte[] uniform = new byte[150_000];
+        random.nextBytes(uniform);
+        sources.add(write("uniform.bin", uniform));
+
+        sources.add(write("single.bin", new byte[70_000]));
+        sources.add(write("empty.bin", new byte[0]));
+        sources.add(write("tiny.txt", "abracadabra".getBytes(StandardCharsets.US_ASCII)));
+        return sources;
+    }
+
+    private Path write(String name, byte[] data) throws IOException {
+        final Path source = directory.resolve(name);
+        Files.write(source, data);
+        return source;
+    }
+}
@@ -0,0 +1,189 @@
+package huffman;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class AdaptiveHuffman {
+    public static final int FLAG_ADAPTIVE = 0x04;
+    private static final int ESCAPE = 256;
+    private static final int LITERAL_BITS = Byte.SIZE + 1;
+    private static final int MAX_WEIGHT = 1 << 16;
+    private static final int ROOT = 0;
+
+    private final int[] weight;
+    private final int[] parent;
+    private final int[] child;
+    private final boolean[] leaf;
+    private final int[] positions;
+    private int next;
+
+    public AdaptiveHuffman() {
+        final int nodes = 2 * (ESCAPE + 1) - 1;
+        weight = new int[nodes];
+        parent = new int[nodes];
+        child = new int[nodes];
+        leaf = new boolean[nodes];
+        positions = new int[ESCAPE + 1];
+        Arrays.fill(positions, -1);
+
+        weight[ROOT] = 1;
+        parent[ROOT] = -1;
+        child[ROOT] = ESCAPE;
+        leaf[ROOT] = true;
+        positions[ESCAPE] = ROOT;
+        next = 1;
+    }
+
+    public void encode(int symbol, BitWriter writer) throws IOException {
+        if (positions[symbol] < 0) {
+            writePath(positions[ESCAPE], writer);
+            writer.write(symbol, LITERAL_BITS);
+            add(symbol);
+        }
+        else {
+            writePath(positions[symbol], writer);
+        }
+        update(symbol);
+    }
+
+    public void finish(BitWriter writer) throws IOException {
+        writePath(positions[ESCAPE], writer);
+        writer.write(ESCAPE, LITERAL_BITS);
+    }
+
+    public int decode(BitReader reader) throws IOException {
+        int node = ROOT;
+        while (!leaf[node]) {
+            reader.refill();
+            final int window = reader.peek(Integer.SIZE);
+            int used = 0;
+            while (!leaf[node] && used < Integer.SIZE) {
+                node = child[node] + ((window >>> (Integer.SIZE - 1 - used++)) & 1);
+            }
+            reader.skip(used);
+        }
+        int symbol = child[node];
+        if (symbol == ESCAPE) {
+            symbol = reader.read(LITERAL_BITS);
+            if (symbol == ESCAPE) {
+                return -1;
+            }
+            if (symbol > ESCAPE || positions[symbol] >= 0) {
+                throw new HuffmanCoding.HuffmanBadHeader("Adaptive stream introduces a symbol that is already known.");
+            }
+            add(symbol);
+        }
+        if (reader.isExhausted() && reader.available() < 0) {
+            throw new HuffmanCoding.HuffmanBadHeader("Adaptive stream ends without an end marker.");
+        }
+        update(symbol);
+        return symbol;
+    }
+
+    private void writePath(int node, BitWriter writer) throws IOException {
+        long code = 0;
+        int length = 0;
+        for (; node != ROOT; node = parent[node]) {
+            if (length == BitWriter.MAX_LENGTH) {
+                throw new HuffmanCoding.HuffmanCodeLength(length + 1);
+            }
+            code |= (long)(node - child[parent[node]]) << length++;
+        }
+        writer.write(code, length);
+    }
+
+    private void add(int symbol) {
+        final int lightest = next - 1;
+        final int copy = next;
+        final int fresh = next + 1;
+        next += 2;
+
+        child[copy] = child[lightest];
+        leaf[copy] = true;
+        weight[copy] = weight[lightest];
+        parent[copy] = lightest;
+        positions[child[copy]] = copy;
+
+        child[fresh] = symbol;
+        leaf[fresh] = true;
+        weight[fresh] = 0;
+        parent[fresh] = lightest;
+        positions[symbol] = fresh;
+
+        child[lightest] = copy;
+        leaf[lightest] = false;
+    }
+
+    private void update(int symbol) {
+        int current = positions[symbol];
+        while (current != ROOT) {
+            weight[current]++;
+            int leader = current;
+            while (leader > ROOT && weight[leader - 1] < weight[current]) {
+                --leader;
+            }
+            if (leader != current) {
+                swap(current, leader);
+                current = leader;
+            }
+            current = parent[current];
+        }
+        if (++weight[ROOT] >= MAX_WEIGHT) {
+            rebuild();
+        }
+    }
+
+    private void swap(int i, int j) {
+        link(i, j);
+        link(j, i);
+        final int heavy = weight[i];
+        weight[i] = weight[j];
+        weight[j] = heavy;
+        final int down = child[i];
+        child[i] = child[j];
+        child[j] = down;
+        final boolean terminal = leaf[i];
+        leaf[i] = leaf[j];
+        leaf[j] = terminal;
+    }
+
+    private void link(int node, int position) {
+        if (leaf[node]) {
+            positions[child[node]] = position;
+        }
+        else {
+            parent[child[node]] = position;
+            parent[child[node] + 1] = position;
+        }
+    }
+
+    private void rebuild() {
+        int j = next - 1;
+        for (int i = j; i >= ROOT; --i) {
+            if (leaf[i]) {
+                child[j] = child[i];
+                leaf[j] = true;
+                weight[j] = (weight[i] + 1) / 2;
+                --j;
+            }
+        }
+        for (int i = next - 2; j >= ROOT; i -= 2, --j) {
+            final int combined = weight[i] + weight[i + 1];
+            int k = j + 1;
+            while (k < next && combined < weight[k]) {
+                ++k;
+            }
+            --k;
+            System.arraycopy(weight, j + 1, weight, j, k - j);
+            System.arraycopy(child, j + 1, child, j, k - j);
+            System.arraycopy(leaf, j + 1, leaf, j, k - j);
+            weight[k] = combined;
+            child[k] = i;
+            leaf[k] = false;
+        }
+        for (int i = next - 1; i >= ROOT; --i) {
+            link(i, i);
+        }
+        parent[ROOT] = -1;
+    }
+}
@@ -16,6 +16,7 @@ public class App extends Application {
 
     @Override
     public void start(Stage primaryStage) throws IOException {
+        CodecMetrics.register();
         final FXMLLoader loader = new FXMLLoader(getClass().getResource("primary.fxml"));
         final Parent root = loader.load();
         primaryStage.setTitle("Huffman Encoder");
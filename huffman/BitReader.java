@@ -0,0 +1,111 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class BitReader {
+    private final InputStream input;
+    private final byte[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    private long register = 0;
+    private int count = 0;
+    private long bytesRead = 0;
+
+    public BitReader(InputStream input) {
+        this(input, 65536);
+    }
+
+    public BitReader(InputStream input, int capacity) {
+        this(input, new byte[Math.max(1, capacity)]);
+    }
+
+    public BitReader(InputStream input, byte[] buffer) {
+        if (buffer.length == 0) {
+            throw new IllegalArgumentException("Bit reader buffers must hold at least one byte.");
+        }
+        this.input = input;
+        this.buffer = buffer;
+    }
+
+    public void refill() throws IOException {
+        while (count <= Long.SIZE - Byte.SIZE) {
+            if (position == limit && !fill()) {
+                return;
+            }
+            register |= (buffer[position++] & 0xFFL) << (Long.SIZE - Byte.SIZE - count);
+            count += Byte.SIZE;
+        }
+        if (position == limit) {
+            fill();
+        }
+    }
+
+    public int peek(int width) {
+        return (int)(register >>> (Long.SIZE - width));
+    }
+
+    public int read(int width) throws IOException {
+        refill();
+        final int value = peek(width);
+        skip(width);
+        return value;
+    }
+
+    public void skip(int width) {
+        register <<= width;
+        count -= width;
+    }
+
+    public void align() {
+        skip(count % Byte.SIZE);
+    }
+
+    public int available() {
+        return count;
+    }
+
+    public boolean isExhausted() {
+        return eof;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public static long readVarInt(InputStream input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            final int next = input.read();
+            if (next < 0) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman header ends in the middle of a number.");
+            }
+            value |= (long)(next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new HuffmanCoding.HuffmanBadHeader("Huffman header contains an overlong number.");
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int read;
+        do {
+            read = input.read(buffer, 0, buffer.length);
+        } while (read == 0);
+
+        position = 0;
+        if (read < 0) {
+            limit = 0;
+            eof = true;
+            return false;
+        }
+        limit = read;
+        bytesRead += read;
+        return true;
+    }
+}
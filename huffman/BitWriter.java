@@ -0,0 +1,123 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+public class BitWriter {
+    public static final int MAX_LENGTH = Long.SIZE;
+    private static final VarHandle WORD = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final OutputStream output;
+    private final byte[] buffer;
+    private int position = 0;
+    private long register = 0;
+    private int count = 0;
+    private long written = 0;
+
+    public BitWriter(OutputStream output) {
+        this(output, 65536);
+    }
+
+    public BitWriter(OutputStream output, int capacity) {
+        this(output, new byte[Math.max(Long.BYTES, capacity & ~(Long.BYTES - 1))]);
+    }
+
+    public BitWriter(OutputStream output, byte[] buffer) {
+        if (buffer.length < Long.BYTES || buffer.length % Long.BYTES != 0) {
+            throw new IllegalArgumentException("Bit writer buffers must hold a whole number of words.");
+        }
+        this.output = output;
+        this.buffer = buffer;
+    }
+
+    public void write(long code, int length) throws IOException {
+        final int free = Long.SIZE - count;
+        written += length;
+        if (length < free) {
+            register |= code << (free - length);
+            count += length;
+        }
+        else {
+            final int spill = length - free;
+            register |= code >>> spill;
+            flushWord();
+            register = spill == 0 ? 0 : code << (Long.SIZE - spill);
+            count = spill;
+        }
+    }
+
+    public void writeByte(int value) throws IOException {
+        write(value & 0xFF, Byte.SIZE);
+    }
+
+    public void writeVarInt(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int)(value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte((int)value);
+    }
+
+    public static int varIntBytes(long value) {
+        int bytes = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            ++bytes;
+        }
+        return bytes;
+    }
+
+    public void align() throws IOException {
+        final int aligned = (count + Byte.SIZE - 1) & ~(Byte.SIZE - 1);
+        written += aligned - count;
+        count = aligned;
+        if (count == Long.SIZE) {
+            flushWord();
+            register = 0;
+            count = 0;
+        }
+    }
+
+    public long getBitCount() {
+        return written;
+    }
+
+    public void writeBytes(byte[] data, int offset, int length) throws IOException {
+        drainAligned();
+        output.write(data, offset, length);
+        written += (long)length * Byte.SIZE;
+    }
+
+    public void finish() throws IOException {
+        drainAligned();
+        output.flush();
+    }
+
+    private void drainAligned() throws IOException {
+        align();
+        if (position + Long.BYTES > buffer.length) {
+            drain();
+        }
+        for (int shift = Long.SIZE - Byte.SIZE; count > 0; shift -= Byte.SIZE, count -= Byte.SIZE) {
+            buffer[position++] = (byte)(register >>> shift);
+        }
+        register = 0;
+        drain();
+    }
+
+    private void flushWord() throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        WORD.set(buffer, position, register);
+        position += Long.BYTES;
+    }
+
+    private void drain() throws IOException {
+        output.write(buffer, 0, position);
+        position = 0;
+    }
+}
@@ -0,0 +1,376 @@
+package huffman;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+public class BlockContainer {
+    public static final int FLAG_BLOCKS = 0x01;
+    public static final int FLAG_SHARED_TABLE = 0x02;
+    public static final int DEFAULT_BLOCK_SIZE = 4 << 20;
+    public static final int MIN_BLOCK_SIZE = 1 << 16;
+    public static final int MAX_BLOCK_SIZE = 1 << 26;
+    private static final int TRAILER_BYTES = Long.BYTES;
+
+    private final int blockSize;
+    private final boolean shared;
+    private final int maxCodeLength;
+    private final boolean checked;
+    private final boolean storable;
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final int window = Math.max(2, 2 * pool.getParallelism());
+    private TableCounter[] counters = new TableCounter[0];
+    private CodeTable[] tables = null;
+    private boolean[] stored = null;
+    private boolean memoryMapped = false;
+
+    private static class Block {
+        public final byte[] data;
+        public final int length;
+
+        public Block(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    public BlockContainer(int blockSize, boolean shared, int maxCodeLength) {
+        this(blockSize, shared ? FLAG_SHARED_TABLE : 0, maxCodeLength);
+    }
+
+    public BlockContainer(int blockSize, int flags, int maxCodeLength) {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be between " + MIN_BLOCK_SIZE + " and " + MAX_BLOCK_SIZE + " bytes.");
+        }
+        this.blockSize = blockSize;
+        this.shared = (flags & FLAG_SHARED_TABLE) != 0;
+        this.maxCodeLength = maxCodeLength;
+        this.checked = (flags & HuffmanCoding.FLAG_CHECKSUM) != 0;
+        this.storable = (flags & HuffmanCoding.FLAG_STORED) != 0;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    public boolean isChecked() {
+        return checked;
+    }
+
+    public boolean isStorable() {
+        return storable;
+    }
+
+    public int getFlags() {
+        return FLAG_BLOCKS | (shared ? FLAG_SHARED_TABLE : 0) | (checked ? HuffmanCoding.FLAG_CHECKSUM : 0) | (storable ? HuffmanCoding.FLAG_STORED : 0);
+    }
+
+    public int getStoredCount() {
+        int count = 0;
+        for (boolean raw : stored) {
+            if (raw) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    public TableCounter count(String source, Progress progress) throws HuffmanCoding.HuffmanIOExcept {
+        final TableCounter total = new TableCounter(256);
+        try (FileChannel channel = FileChannel.open(Path.of(source), StandardOpenOption.READ)) {
+            final long length = channel.size();
+            counters = new TableCounter[blockCount(length)];
+            final ArrayDeque<Future<TableCounter>> pending = new ArrayDeque<>();
+            int submitted = 0;
+            for (int i = 0; i < counters.length; ++i) {
+                while (submitted < counters.length && pending.size() < window) {
+                    final long position = (long)submitted++ * blockSize;
+                    pending.add(pool.submit(() -> {
+                        final Block block = readBlock(channel, position, blockLength(length, position));
+                        final TableCounter counter = new TableCounter(256);
+                        counter.count(block.data, 0, block.length);
+                        return counter;
+                    }));
+                }
+                counters[i] = await(pending.remove());
+                total.addAll(counters[i]);
+                progress.set(i + 1, counters.length);
+            }
+        } catch (IOException ioe) {
+            throw new HuffmanCoding.HuffmanIOExcept();
+        }
+        return total;
+    }
+
+    public void buildTables(CodeTable codes) {
+        tables = new CodeTable[counters.length];
+        stored = new boolean[counters.length];
+        for (int i = 0; i < counters.length; ++i) {
+            if (shared) {
+                tables[i] = codes;
+            }
+            else {
+                final HuffmanTree tree = new HuffmanTree();
+                tree.initialize(counters[i], maxCodeLength);
+                tables[i] = tree.getCodeTable().canonical();
+            }
+            stored[i] = storable && codedBytes(i) >= blockLength(i);
+        }
+    }
+
+    public long getCompressedBytes(CodeTable codes) {
+        long total = Short.BYTES + 2 + BitWriter.varIntBytes(blockSize) + BitWriter.varIntBytes(counters.length) + TRAILER_BYTES;
+        if (shared) {
+            total += codes.getLengthTableBytes();
+        }
+        for (int i = 0; i < counters.length; ++i) {
+            final long bytes = stored[i] ? blockLength(i) : codedBytes(i);
+            total += bytes + BitWriter.varIntBytes(storable ? bytes << 1 : bytes) + BitWriter.varIntBytes(blockLength(i)) + (checked ? Integer.BYTES : 0);
+        }
+        return total;
+    }
+
+    public void encode(String source, String destination, CodeTable codes, Progress progress) throws HuffmanCoding.HuffmanIOExcept {
+        try (FileChannel channel = FileChannel.open(Path.of(source), StandardOpenOption.READ);
+             OutputStream output = openOutput(destination, getCompressedBytes(codes))) {
+            final long length = channel.size();
+            final ByteArrayOutputStream header = new ByteArrayOutputStream();
+            final BitWriter writer = new BitWriter(header);
+            writer.write(HuffmanCoding.SIGNATURE_VERSIONED, Short.SIZE);
+            writer.writeByte(HuffmanCoding.VERSION);
+            writer.writeByte(getFlags());
+            writer.writeVarInt(blockSize);
+            if (shared) {
+                codes.writeLengths(writer);
+            }
+            writer.finish();
+            header.writeTo(output);
+
+            final long[] sizes = new long[counters.length];
+            final int[] checksums = new int[counters.length];
+            final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+            int submitted = 0;
+            for (int i = 0; i < counters.length; ++i) {
+                while (submitted < counters.length && pending.size() < window) {
+                    final int index = submitted++;
+                    final long position = (long)index * blockSize;
+                    pending.add(pool.submit(() -> {
+                        final Block block = readBlock(channel, position, blockLength(length, position));
+                        checksums[index] = checksum(block);
+                        return stored[index] ? block.data : encodeBlock(block, tables[index]);
+                    }));
+                }
+                final byte[] encoded = await(pending.remove());
+                output.write(encoded);
+                sizes[i] = encoded.length;
+                progress.set(i + 1, counters.length);
+            }
+
+            final ByteArrayOutputStream index = new ByteArrayOutputStream();
+            final BitWriter indexWriter = new BitWriter(index);
+            indexWriter.writeVarInt(counters.length);
+            long offset = header.size();
+            for (int i = 0; i < counters.length; ++i) {
+                indexWriter.writeVarInt(storable ? sizes[i] << 1 | (stored[i] ? 1 : 0) : sizes[i]);
+                indexWriter.writeVarInt(blockLength(i));
+                if (checked) {
+                    indexWriter.write(checksums[i] & 0xFFFFFFFFL, Integer.SIZE);
+                }
+                offset += sizes[i];
+            }
+            indexWriter.write(offset, Long.SIZE);
+            indexWriter.finish();
+            index.writeTo(output);
+        } catch (IOException ioe) {
+            throw new HuffmanCoding.HuffmanIOExcept();
+        }
+    }
+
+    public void decode(String source, String destination, CodeTable codes, Progress progress) throws HuffmanCoding.HuffmanIOExcept, HuffmanCoding.HuffmanBadHeader {
+        try (FileChannel channel = FileChannel.open(Path.of(source), StandardOpenOption.READ)) {
+            final long length = channel.size();
+            if (length < TRAILER_BYTES) {
+                throw new HuffmanCoding.HuffmanBadHeader("Block container is missing its index.");
+            }
+            final long indexOffset = ByteBuffer.wrap(readBlock(channel, length - TRAILER_BYTES, TRAILER_BYTES).data).getLong();
+            if (indexOffset < 0 || indexOffset > length - TRAILER_BYTES) {
+                throw new HuffmanCoding.HuffmanBadHeader("Block container has an impossible index offset.");
+            }
+            final Block indexBlock = readBlock(channel, indexOffset, (int)(length - TRAILER_BYTES - indexOffset));
+            final InputStream index = new ByteArrayInputStream(indexBlock.data, 0, indexBlock.length);
+            final long count = BitReader.readVarInt(index);
+            if (count > indexBlock.length) {
+                throw new HuffmanCoding.HuffmanBadHeader("Block container index is truncated.");
+            }
+            final long[] offsets = new long[(int)count];
+            final int[] compressed = new int[offsets.length];
+            final int[] uncompressed = new int[offsets.length];
+            final int[] checksums = new int[offsets.length];
+            stored = new boolean[offsets.length];
+            long offset = indexOffset;
+            for (int i = 0; i < offsets.length; ++i) {
+                final long entry = BitReader.readVarInt(index);
+                final long size = storable ? entry >>> 1 : entry;
+                final long original = BitReader.readVarInt(index);
+                stored[i] = storable && (entry & 1) != 0;
+                if (size > Integer.MAX_VALUE || original > blockSize || (stored[i] && size != original)) {
+                    throw new HuffmanCoding.HuffmanBadHeader("Block container index describes an impossible block.");
+                }
+                compressed[i] = (int)size;
+                uncompressed[i] = (int)original;
+                if (checked) {
+                    final byte[] crc = index.readNBytes(Integer.BYTES);
+                    if (crc.length != Integer.BYTES) {
+                        throw new HuffmanCoding.HuffmanBadHeader("Block container index is truncated.");
+                    }
+                    checksums[i] = ByteBuffer.wrap(crc).getInt();
+                }
+                offset -= size;
+            }
+            if (offset < 0) {
+                throw new HuffmanCoding.HuffmanBadHeader("Block container index does not match the file size.");
+            }
+            long total = 0;
+            for (int i = 0; i < offsets.length; ++i) {
+                offsets[i] = offset;
+                offset += compressed[i];
+                total += uncompressed[i];
+            }
+
+            try (OutputStream output = openOutput(destination, total)) {
+                final ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+                int submitted = 0;
+                for (int i = 0; i < offsets.length; ++i) {
+                    while (submitted < offsets.length && pending.size() < window) {
+                        final int block = submitted++;
+                        pending.add(pool.submit(() -> {
+                            final Block raw = readBlock(channel, offsets[block], compressed[block]);
+                            final Block decoded = stored[block] ? raw : decodeBlock(raw, uncompressed[block], codes);
+                            if (checked && checksum(decoded) != checksums[block]) {
+                                throw new HuffmanCoding.HuffmanBadChecksum("Block " + block);
+                            }
+                            return decoded;
+                        }));
+                    }
+                    final Block decoded = await(pending.remove());
+                    output.write(decoded.data, 0, decoded.length);
+                    progress.set(i + 1, offsets.length);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new HuffmanCoding.HuffmanIOExcept();
+        }
+    }
+
+    private byte[] encodeBlock(Block block, CodeTable table) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(block.length / 2 + 64);
+        final BitWriter writer = new BitWriter(output);
+        if (!shared) {
+            table.writeLengths(writer);
+        }
+        for (int i = 0; i < block.length; ++i) {
+            final int symbol = block.data[i] & 0xFF;
+            writer.write(table.getCode(symbol), table.getLength(symbol));
+        }
+        writer.finish();
+        return output.toByteArray();
+    }
+
+    private Block decodeBlock(Block block, int length, CodeTable codes) throws IOException {
+        final InputStream input = new ByteArrayInputStream(block.data, 0, block.length);
+        final CodeTable table = shared ? codes : CodeTable.readLengths(input, 256);
+        final byte[] output = new byte[length];
+        final int decoded = new DecodeTable(table).decode(new BitReader(input), 0, output, 0, length);
+        if (decoded != length) {
+            throw new HuffmanCoding.HuffmanBadHeader("Block ended after " + decoded + " of " + length + " bytes.");
+        }
+        return new Block(output, length);
+    }
+
+    private long codedBytes(int index) {
+        return (tables[index].getCompressionSize(counters[index]) + Byte.SIZE - 1) / Byte.SIZE + (shared ? 0 : tables[index].getLengthTableBytes());
+    }
+
+    private static int checksum(Block block) {
+        final CRC32C crc = new CRC32C();
+        crc.update(block.data, 0, block.length);
+        return (int)crc.getValue();
+    }
+
+    private int blockCount(long length) {
+        return (int)((length + blockSize - 1) / blockSize);
+    }
+
+    private int blockLength(long length, long position) {
+        return (int)Math.min(blockSize, length - position);
+    }
+
+    private long blockLength(int index) {
+        return counters[index].getTotal();
+    }
+
+    private OutputStream openOutput(String destination, long expected) throws IOException {
+        if (memoryMapped) {
+            return new MappedOutputStream(destination, expected);
+        }
+        return new BufferedOutputStream(new FileOutputStream(destination), 65536);
+    }
+
+    private Block readBlock(FileChannel channel, long position, int length) throws IOException {
+        final byte[] data = new byte[length];
+        if (memoryMapped && length > 0) {
+            if (position + length > channel.size()) {
+                throw new EOFException();
+            }
+            channel.map(FileChannel.MapMode.READ_ONLY, position, length).get(data);
+            return new Block(data, length);
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return new Block(data, length);
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        }
+    }
+}
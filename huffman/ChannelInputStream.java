@@ -0,0 +1,49 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class ChannelInputStream extends InputStream {
+    private final FileChannel channel;
+    private long position;
+    private final long end;
+
+    public ChannelInputStream(FileChannel channel, long position, long length) {
+        this.channel = channel;
+        this.position = position;
+        this.end = position + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] data, int offset, int length) throws IOException {
+        if (position >= end) {
+            return -1;
+        }
+        final int read = channel.read(ByteBuffer.wrap(data, offset, (int)Math.min(length, end - position)), position);
+        if (read < 0) {
+            return -1;
+        }
+        position += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long length) {
+        final long skipped = Math.max(0, Math.min(length, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int)Math.min(Integer.MAX_VALUE, Math.max(0, end - position));
+    }
+}
@@ -0,0 +1,129 @@
+package huffman;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32C;
+
+public class ChecksumInputStream extends FilterInputStream {
+    private static final int DRAIN_BYTES = 8192;
+
+    private final CRC32C crc = new CRC32C();
+    private boolean checking = true;
+    private long position = 0;
+    private long end = Long.MAX_VALUE;
+    private int expected = 0;
+
+    public ChecksumInputStream(InputStream in) {
+        super(in);
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public void ignore() {
+        checking = false;
+    }
+
+    public void expect(long end, int expected) {
+        if (end < position) {
+            throw new HuffmanCoding.HuffmanBadHeader("File is invalid, it is missing its checksum trailer.");
+        }
+        this.end = end;
+        this.expected = expected;
+    }
+
+    public void finish() throws IOException {
+        if (!checking || end == Long.MAX_VALUE) {
+            return;
+        }
+        final byte[] drain = new byte[DRAIN_BYTES];
+        while (position < end) {
+            if (read(drain, 0, drain.length) < 0) {
+                throw new EOFException();
+            }
+        }
+        verify();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position >= end) {
+            verify();
+            return -1;
+        }
+        final int value = in.read();
+        if (value >= 0) {
+            if (checking) {
+                crc.update(value);
+            }
+            if (++position == end) {
+                verify();
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] data, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position >= end) {
+            verify();
+            return -1;
+        }
+        final int read = in.read(data, offset, (int)Math.min(length, end - position));
+        if (read > 0) {
+            if (checking) {
+                crc.update(data, offset, read);
+            }
+            position += read;
+            if (position == end) {
+                verify();
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long length) throws IOException {
+        if (!checking) {
+            final long skipped = in.skip(Math.min(length, end - position));
+            position += skipped;
+            return skipped;
+        }
+        final byte[] drain = new byte[(int)Math.min(DRAIN_BYTES, Math.max(1, length))];
+        long skipped = 0;
+        while (skipped < length) {
+            final int read = read(drain, 0, (int)Math.min(drain.length, length - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int)Math.min(in.available(), end - position);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void verify() {
+        if (!checking || end == Long.MAX_VALUE) {
+            return;
+        }
+        checking = false;
+        if ((int)crc.getValue() != expected) {
+            throw new HuffmanCoding.HuffmanBadChecksum("Encoded data");
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class CodeTable {
+    private static final int SPARSE_LAYOUT = 0x80;
+
+    private final long[] codes;
+    private final int[] lengths;
+
+    public CodeTable(int range) {
+        codes = new long[range];
+        lengths = new int[range];
+    }
+
+    public int getRange() {
+        return codes.length;
+    }
+
+    public void set(int symbol, long code, int length) {
+        codes[symbol] = code;
+        lengths[symbol] = length;
+    }
+
+    public long getCode(int symbol) {
+        return codes[symbol];
+    }
+
+    public int getLength(int symbol) {
+        return lengths[symbol];
+    }
+
+    public int getMaxLength() {
+        int max = 0;
+        for (int length : lengths) {
+            max = Math.max(max, length);
+        }
+        return max;
+    }
+
+    public long getCompressionSize(TableCounter counter) {
+        long size = 0;
+        for (int i = 0; i < lengths.length; ++i) {
+            size += counter.get(i) * lengths[i];
+        }
+        return size;
+    }
+
+    public int getSymbolCount() {
+        int total = 0;
+        for (int length : lengths) {
+            if (length > 0) {
+                ++total;
+            }
+        }
+        return total;
+    }
+
+    public Table<String> getEncodings() {
+        final Table<String> encoder = new Table<>(String.class, codes.length);
+        for (int i = 0; i < codes.length; ++i) {
+            if (lengths[i] > 0) {
+                final String binary = Long.toBinaryString(codes[i]);
+                encoder.set(i, "0".repeat(lengths[i] - binary.length()) + binary);
+            }
+        }
+        return encoder;
+    }
+
+    public CodeTable canonical() {
+        return fromLengths(lengths);
+    }
+
+    public static CodeTable fromLengths(int[] lengths) throws HuffmanCoding.HuffmanBadHeader {
+        final int[] counts = new int[BitWriter.MAX_LENGTH + 1];
+        for (int length : lengths) {
+            if (length < 0 || length > BitWriter.MAX_LENGTH) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman header contains an impossible code length of " + length + ".");
+            }
+            counts[length]++;
+        }
+        long open = 1;
+        for (int length = 1; length <= BitWriter.MAX_LENGTH; ++length) {
+            open = Math.min(open * 2, lengths.length) - counts[length];
+            if (open < 0) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman header code lengths do not form a valid prefix code.");
+            }
+        }
+
+        final long[] next = new long[BitWriter.MAX_LENGTH + 1];
+        long code = 0;
+        counts[0] = 0;
+        for (int length = 1; length <= BitWriter.MAX_LENGTH; ++length) {
+            code = (code + counts[length - 1]) << 1;
+            next[length] = code;
+        }
+        final CodeTable table = new CodeTable(lengths.length);
+        for (int i = 0; i < lengths.length; ++i) {
+            if (lengths[i] > 0) {
+                table.set(i, next[lengths[i]]++, lengths[i]);
+            }
+        }
+        return table;
+    }
+
+    public int getLengthDescriptor() {
+        final int width = lengthWidth();
+        return lengthTableBits(SPARSE_LAYOUT | width) < lengthTableBits(width) ? SPARSE_LAYOUT | width : width;
+    }
+
+    public int getLengthTableBytes() {
+        final long table = (lengthTableBits(getLengthDescriptor()) + Byte.SIZE - 1) / Byte.SIZE;
+        return 1 + BitWriter.varIntBytes(getSymbolCount()) + BitWriter.varIntBytes(table) + (int)table;
+    }
+
+    public void writeLengths(BitWriter writer) throws IOException {
+        final int descriptor = getLengthDescriptor();
+        final int width = descriptor & ~SPARSE_LAYOUT;
+        writer.writeByte(descriptor);
+        writer.writeVarInt(getSymbolCount());
+        writer.writeVarInt((lengthTableBits(descriptor) + Byte.SIZE - 1) / Byte.SIZE);
+        int previous = -1;
+        for (int i = 0; i < lengths.length; ++i) {
+            if ((descriptor & SPARSE_LAYOUT) == 0) {
+                writer.write(lengths[i] > 0 ? 1 : 0, 1);
+            }
+            else if (lengths[i] > 0) {
+                writer.write(i - previous, gapBits(i - previous));
+                previous = i;
+            }
+            if (lengths[i] > 0) {
+                writer.write(lengths[i], width);
+            }
+        }
+        writer.align();
+    }
+
+    public static CodeTable readLengths(InputStream input, int range) throws IOException, HuffmanCoding.HuffmanBadHeader {
+        final int descriptor = input.read();
+        final long symbols = BitReader.readVarInt(input);
+        final long bytes = BitReader.readVarInt(input);
+        final int width = descriptor & ~SPARSE_LAYOUT;
+        if (descriptor < 0 || symbols > range || bytes > (long)range * Long.BYTES || width == 0 || width > lengthWidth(BitWriter.MAX_LENGTH)) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman header has an impossible code length table.");
+        }
+        final byte[] packed = input.readNBytes((int)bytes);
+        if (packed.length != bytes) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman header ends before its code length table.");
+        }
+        final int[] lengths = new int[range];
+        final BitReader reader = new BitReader(new ByteArrayInputStream(packed), packed.length);
+        if ((descriptor & SPARSE_LAYOUT) != 0) {
+            int previous = -1;
+            for (long i = 0; i < symbols; ++i) {
+                final int symbol = previous + readGap(reader);
+                if (symbol >= range) {
+                    throw new HuffmanCoding.HuffmanBadHeader("Huffman header references a symbol outside of the alphabet.");
+                }
+                lengths[symbol] = reader.read(width);
+                previous = symbol;
+            }
+        }
+        else {
+            for (int i = 0; i < range; ++i) {
+                if (reader.read(1) != 0) {
+                    lengths[i] = reader.read(width);
+                }
+            }
+        }
+        final CodeTable table = fromLengths(lengths);
+        if (table.getSymbolCount() != symbols) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman header symbol count does not match its code length table.");
+        }
+        return table;
+    }
+
+    private int lengthWidth() {
+        return lengthWidth(getMaxLength());
+    }
+
+    private static int lengthWidth(int max) {
+        return max == 0 ? 1 : Integer.SIZE - Integer.numberOfLeadingZeros(max);
+    }
+
+    private long lengthTableBits(int descriptor) {
+        final int width = descriptor & ~SPARSE_LAYOUT;
+        long bits = (long)getSymbolCount() * width;
+        if ((descriptor & SPARSE_LAYOUT) == 0) {
+            return bits + lengths.length;
+        }
+        int previous = -1;
+        for (int i = 0; i < lengths.length; ++i) {
+            if (lengths[i] > 0) {
+                bits += gapBits(i - previous);
+                previous = i;
+            }
+        }
+        return bits;
+    }
+
+    private static int gapBits(int gap) {
+        return 2 * (Integer.SIZE - 1 - Integer.numberOfLeadingZeros(gap)) + 1;
+    }
+
+    private static int readGap(BitReader reader) throws IOException {
+        int zeros = 0;
+        while (reader.read(1) == 0) {
+            if (++zeros >= Integer.SIZE - 1) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman header has a corrupt code length table.");
+            }
+        }
+        return zeros == 0 ? 1 : (1 << zeros) | reader.read(zeros);
+    }
+}
@@ -0,0 +1,111 @@
+package huffman;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CodecContext {
+    public static final int INPUT_BYTES = 65536;
+    public static final int OUTPUT_BYTES = 65536 * Byte.SIZE;
+    public static final int BIT_BUFFER_BYTES = 65536;
+
+    private final byte[] input = new byte[INPUT_BYTES];
+    private final byte[] output = new byte[OUTPUT_BYTES];
+    private final byte[] writeBuffer = new byte[BIT_BUFFER_BYTES];
+    private final byte[] readBuffer = new byte[BIT_BUFFER_BYTES];
+
+    /**
+     * Recycles contexts between jobs. At most {@code capacity} contexts are created. When all are in use,
+     * {@link #acquire()} waits up to the timeout for one to be released, then hands out a temporary context
+     * that is counted by {@link #getOverflowCount()} and dropped on release. The wait is bounded so a job's
+     * parallel counting segments cannot deadlock against the context the job already holds.
+     */
+    public static class Pool {
+        public static final long ACQUIRE_TIMEOUT_MILLIS = 100;
+        public static final Pool SHARED = new Pool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+
+        private final int capacity;
+        private final long timeoutMillis;
+        private final BlockingQueue<CodecContext> idle;
+        private final AtomicInteger created = new AtomicInteger();
+        private final AtomicLong overflows = new AtomicLong();
+
+        public Pool(int capacity) {
+            this(capacity, ACQUIRE_TIMEOUT_MILLIS);
+        }
+
+        public Pool(int capacity, long timeoutMillis) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Codec context pool must hold at least one context.");
+            }
+            if (timeoutMillis < 0) {
+                throw new IllegalArgumentException("Codec context pool timeout cannot be negative.");
+            }
+            this.capacity = capacity;
+            this.timeoutMillis = timeoutMillis;
+            idle = new ArrayBlockingQueue<>(capacity);
+        }
+
+        public CodecContext acquire() {
+            final CodecContext context = idle.poll();
+            if (context != null) {
+                return context;
+            }
+            if (created.getAndUpdate(count -> Math.min(capacity, count + 1)) < capacity) {
+                return new CodecContext();
+            }
+            try {
+                final CodecContext returned = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+                if (returned != null) {
+                    return returned;
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            overflows.incrementAndGet();
+            return new CodecContext();
+        }
+
+        public void release(CodecContext context) {
+            if (context != null) {
+                idle.offer(context);
+            }
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public int getIdleCount() {
+            return idle.size();
+        }
+
+        public int getCreatedCount() {
+            return created.get();
+        }
+
+        public long getOverflowCount() {
+            return overflows.get();
+        }
+    }
+
+    public byte[] getInputBuffer() {
+        return input;
+    }
+
+    public byte[] getOutputBuffer() {
+        return output;
+    }
+
+    public BitWriter createWriter(OutputStream stream) {
+        return new BitWriter(stream, writeBuffer);
+    }
+
+    public BitReader createReader(InputStream stream) {
+        return new BitReader(stream, readBuffer);
+    }
+}
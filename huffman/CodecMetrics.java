@@ -0,0 +1,287 @@
+package huffman;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+public class CodecMetrics implements CodecMetricsMXBean {
+    public static final String OBJECT_NAME = "huffman:type=CodecMetrics";
+    public static final CodecMetrics SHARED = new CodecMetrics(JobScheduler.SHARED);
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    public enum Phase {
+        COUNT, TREE, ENCODINGS, ENCODE, OPEN, VERIFY, HEADER, DECODE
+    }
+
+    private final JobScheduler scheduler;
+    private final LongAdder[] calls = adders();
+    private final LongAdder[] nanos = adders();
+    private final LongAdder[] bytesIn = adders();
+    private final LongAdder[] bytesOut = adders();
+    private final LongAdder codedBits = new LongAdder();
+    private final LongAdder symbols = new LongAdder();
+    private final AtomicInteger maxTreeDepth = new AtomicInteger();
+    private volatile int lastTreeDepth = 0;
+    private volatile boolean enabled = true;
+
+    @Name("huffman.CodecPhase")
+    @Label("Huffman Codec Phase")
+    @Category("Huffman")
+    @Description("One phase of a Huffman encode or decode")
+    @StackTrace(false)
+    public static class PhaseEvent extends Event {
+        @Label("Phase")
+        public String phase;
+
+        @Label("Source")
+        public String source;
+
+        @Label("Bytes In")
+        @DataAmount
+        public long bytesIn;
+
+        @Label("Bytes Out")
+        @DataAmount
+        public long bytesOut;
+    }
+
+    @Name("huffman.CodeTable")
+    @Label("Huffman Code Table")
+    @Category("Huffman")
+    @Description("Shape of a code table built for an encode")
+    @StackTrace(false)
+    public static class TableEvent extends Event {
+        @Label("Source")
+        public String source;
+
+        @Label("Tree Depth")
+        public int treeDepth;
+
+        @Label("Bits Per Symbol")
+        public double bitsPerSymbol;
+    }
+
+    @Name("huffman.JobQueue")
+    @Label("Huffman Job Queue")
+    @Category("Huffman")
+    @Description("Jobs waiting and running in the shared job scheduler")
+    @Period("1 s")
+    @StackTrace(false)
+    public static class QueueEvent extends Event {
+        @Label("Queued Jobs")
+        public int queued;
+
+        @Label("Running Jobs")
+        public int running;
+    }
+
+    public class Timer {
+        private final Phase phase;
+        private final String source;
+        private final long start = System.nanoTime();
+        private final PhaseEvent event = new PhaseEvent();
+
+        private Timer(Phase phase, String source) {
+            this.phase = phase;
+            this.source = source;
+            event.begin();
+        }
+
+        public void stop(long in, long out) {
+            final long elapsed = System.nanoTime() - start;
+            if (!enabled) {
+                return;
+            }
+            final int index = phase.ordinal();
+            calls[index].increment();
+            nanos[index].add(elapsed);
+            bytesIn[index].add(in);
+            bytesOut[index].add(out);
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.name();
+                event.source = source;
+                event.bytesIn = in;
+                event.bytesOut = out;
+                event.commit();
+            }
+        }
+    }
+
+    public CodecMetrics(JobScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public static synchronized void register() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(SHARED, name);
+                FlightRecorder.addPeriodicEvent(QueueEvent.class, () -> {
+                    final QueueEvent event = new QueueEvent();
+                    event.queued = SHARED.getQueuedJobs();
+                    event.running = SHARED.getRunningJobs();
+                    event.commit();
+                });
+            }
+        } catch (JMException | SecurityException e) {
+            throw new IllegalStateException("Codec metrics could not be registered.", e);
+        }
+    }
+
+    public Timer start(Phase phase, String source) {
+        return new Timer(phase, source);
+    }
+
+    public void recordTable(String source, int treeDepth, long bits, long count) {
+        if (!enabled) {
+            return;
+        }
+        lastTreeDepth = treeDepth;
+        maxTreeDepth.accumulateAndGet(treeDepth, Math::max);
+        codedBits.add(bits);
+        symbols.add(count);
+        final TableEvent event = new TableEvent();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.treeDepth = treeDepth;
+            event.bitsPerSymbol = count == 0 ? 0. : (double)bits / count;
+            event.commit();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getEncodeCount() {
+        return calls[Phase.ENCODE.ordinal()].sum();
+    }
+
+    @Override
+    public long getDecodeCount() {
+        return calls[Phase.DECODE.ordinal()].sum();
+    }
+
+    @Override
+    public long getEncodedBytesIn() {
+        return bytesIn[Phase.ENCODE.ordinal()].sum();
+    }
+
+    @Override
+    public long getEncodedBytesOut() {
+        return bytesOut[Phase.ENCODE.ordinal()].sum();
+    }
+
+    @Override
+    public long getDecodedBytesIn() {
+        return bytesIn[Phase.DECODE.ordinal()].sum();
+    }
+
+    @Override
+    public long getDecodedBytesOut() {
+        return bytesOut[Phase.DECODE.ordinal()].sum();
+    }
+
+    @Override
+    public double getEncodeThroughput() {
+        return throughput(Phase.ENCODE, getEncodedBytesIn());
+    }
+
+    @Override
+    public double getDecodeThroughput() {
+        return throughput(Phase.DECODE, getDecodedBytesOut());
+    }
+
+    @Override
+    public double getAverageBitsPerSymbol() {
+        final long count = symbols.sum();
+        return count == 0 ? 0. : (double)codedBits.sum() / count;
+    }
+
+    @Override
+    public int getLastTreeDepth() {
+        return lastTreeDepth;
+    }
+
+    @Override
+    public int getMaxTreeDepth() {
+        return maxTreeDepth.get();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        return snapshot(calls);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseNanos() {
+        return snapshot(nanos);
+    }
+
+    @Override
+    public int getQueuedJobs() {
+        return scheduler == null ? 0 : scheduler.getQueuedCount();
+    }
+
+    @Override
+    public int getRunningJobs() {
+        return scheduler == null ? 0 : scheduler.getRunningCount();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder[] adders : new LongAdder[][] {calls, nanos, bytesIn, bytesOut}) {
+            for (LongAdder adder : adders) {
+                adder.reset();
+            }
+        }
+        codedBits.reset();
+        symbols.reset();
+        maxTreeDepth.set(0);
+        lastTreeDepth = 0;
+    }
+
+    private double throughput(Phase phase, long bytes) {
+        final long elapsed = nanos[phase.ordinal()].sum();
+        return elapsed == 0 ? 0. : bytes * NANOS_PER_SECOND / elapsed;
+    }
+
+    private static Map<String, Long> snapshot(LongAdder[] adders) {
+        final Map<String, Long> values = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            values.put(phase.name(), adders[phase.ordinal()].sum());
+        }
+        return values;
+    }
+
+    private static LongAdder[] adders() {
+        final LongAdder[] adders = new LongAdder[Phase.values().length];
+        for (int i = 0; i < adders.length; ++i) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -0,0 +1,41 @@
+package huffman;
+
+import java.util.Map;
+
+public interface CodecMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getEncodeCount();
+
+    long getDecodeCount();
+
+    long getEncodedBytesIn();
+
+    long getEncodedBytesOut();
+
+    long getDecodedBytesIn();
+
+    long getDecodedBytesOut();
+
+    double getEncodeThroughput();
+
+    double getDecodeThroughput();
+
+    double getAverageBitsPerSymbol();
+
+    int getLastTreeDepth();
+
+    int getMaxTreeDepth();
+
+    Map<String, Long> getPhaseCounts();
+
+    Map<String, Long> getPhaseNanos();
+
+    int getQueuedJobs();
+
+    int getRunningJobs();
+
+    void reset();
+}
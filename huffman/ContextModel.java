@@ -0,0 +1,279 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class ContextModel {
+    public static final int DEFAULT_TABLES = 16;
+    public static final int MAX_TABLES = 64;
+    private static final int ALPHABET = 256;
+    private static final int TABLE_OVERHEAD_BITS = 3 * Byte.SIZE;
+    private static final int LENGTH_ESTIMATE_BITS = 5;
+    private static final double[] X_LOG_X = new double[1 << 12];
+
+    static {
+        for (int i = 1; i < X_LOG_X.length; ++i) {
+            X_LOG_X[i] = i * Math.log(i);
+        }
+    }
+
+    private final long[][] counts;
+    private final int[] map = new int[ALPHABET];
+    private CodeTable[] tables = new CodeTable[0];
+    private final CodeTable[] encoders = new CodeTable[ALPHABET];
+    private final DecodeTable[] decoders = new DecodeTable[ALPHABET];
+    private int previous = 0;
+
+    public ContextModel() {
+        this.counts = new long[ALPHABET][ALPHABET];
+    }
+
+    private ContextModel(int[] map, CodeTable[] tables) {
+        this.counts = null;
+        System.arraycopy(map, 0, this.map, 0, ALPHABET);
+        this.tables = tables;
+        final DecodeTable[] built = new DecodeTable[tables.length];
+        for (int i = 0; i < tables.length; ++i) {
+            built[i] = new DecodeTable(tables[i]);
+        }
+        for (int context = 0; context < ALPHABET && tables.length > 0; ++context) {
+            encoders[context] = tables[map[context]];
+            decoders[context] = built[map[context]];
+        }
+    }
+
+    public void count(byte[] data, int offset, int length) {
+        int context = previous;
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            final int symbol = data[i] & 0xFF;
+            ++counts[context][symbol];
+            context = symbol;
+        }
+        previous = context;
+    }
+
+    public void build(int maxTables, int maxCodeLength) {
+        if (maxTables < 1 || maxTables > MAX_TABLES) {
+            throw new IllegalArgumentException("Context tables must be between 1 and " + MAX_TABLES + ".");
+        }
+        final int[] cluster = cluster(maxTables);
+        int used = 0;
+        final int[] compact = new int[ALPHABET];
+        for (int context = 0; context < ALPHABET; ++context) {
+            if (cluster[context] == context) {
+                compact[context] = used++;
+            }
+        }
+        final TableCounter[] merged = new TableCounter[used];
+        for (int i = 0; i < used; ++i) {
+            merged[i] = new TableCounter(ALPHABET);
+        }
+        for (int context = 0; context < ALPHABET; ++context) {
+            map[context] = cluster[context] < 0 ? 0 : compact[cluster[context]];
+            if (cluster[context] >= 0) {
+                for (int symbol = 0; symbol < ALPHABET; ++symbol) {
+                    merged[map[context]].add(symbol, counts[context][symbol]);
+                }
+            }
+        }
+        tables = new CodeTable[used];
+        for (int i = 0; i < used; ++i) {
+            final HuffmanTree tree = new HuffmanTree();
+            tree.initialize(merged[i], maxCodeLength);
+            tables[i] = tree.getCodeTable().canonical();
+        }
+        for (int context = 0; context < ALPHABET && used > 0; ++context) {
+            encoders[context] = tables[map[context]];
+        }
+        previous = 0;
+    }
+
+    public int getTableCount() {
+        return tables.length;
+    }
+
+    public CodeTable getTable(int index) {
+        return tables[index];
+    }
+
+    public int getTableIndex(int context) {
+        return map[context];
+    }
+
+    public long getCompressionSize() {
+        long bits = 0;
+        for (int context = 0; context < ALPHABET && tables.length > 0; ++context) {
+            final CodeTable table = encoders[context];
+            for (int symbol = 0; symbol < ALPHABET; ++symbol) {
+                bits += counts[context][symbol] * table.getLength(symbol);
+            }
+        }
+        return bits;
+    }
+
+    public long getHeaderBytes() {
+        long bytes = 1 + (ALPHABET * mapBits(tables.length) + Byte.SIZE - 1) / Byte.SIZE;
+        for (CodeTable table : tables) {
+            bytes += table.getLengthTableBytes();
+        }
+        return bytes;
+    }
+
+    public void writeHeader(BitWriter writer) throws IOException {
+        final int bits = mapBits(tables.length);
+        writer.writeByte(tables.length);
+        for (int context = 0; context < ALPHABET && bits > 0; ++context) {
+            writer.write(map[context], bits);
+        }
+        writer.align();
+        for (CodeTable table : tables) {
+            table.writeLengths(writer);
+        }
+    }
+
+    public static ContextModel read(InputStream input) throws IOException {
+        final int count = input.read();
+        if (count < 0 || count > MAX_TABLES) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman context header has an impossible number of tables.");
+        }
+        final int bits = mapBits(count);
+        final int[] map = new int[ALPHABET];
+        if (bits > 0) {
+            final byte[] packed = input.readNBytes(ALPHABET * bits / Byte.SIZE);
+            if (packed.length != ALPHABET * bits / Byte.SIZE) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman header ends before its context map.");
+            }
+            final BitReader reader = new BitReader(new ByteArrayInputStream(packed), Math.max(Long.BYTES, packed.length));
+            for (int context = 0; context < ALPHABET; ++context) {
+                map[context] = reader.read(bits);
+                if (map[context] >= count) {
+                    throw new HuffmanCoding.HuffmanBadHeader("Huffman context map references a table that does not exist.");
+                }
+            }
+        }
+        final CodeTable[] tables = new CodeTable[count];
+        for (int i = 0; i < count; ++i) {
+            tables[i] = CodeTable.readLengths(input, ALPHABET);
+        }
+        return new ContextModel(map, tables);
+    }
+
+    public void reset() {
+        previous = 0;
+    }
+
+    public void encode(byte[] data, int offset, int length, BitWriter writer) throws IOException {
+        int context = previous;
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            final int symbol = data[i] & 0xFF;
+            final CodeTable table = encoders[context];
+            writer.write(table.getCode(symbol), table.getLength(symbol));
+            context = symbol;
+        }
+        previous = context;
+    }
+
+    public int decode(BitReader reader, byte[] output, int offset, int length) throws IOException {
+        if (length > 0 && tables.length == 0) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman context header has no tables for its data.");
+        }
+        int context = previous;
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            context = decoders[context].decodeSymbol(reader);
+            output[i] = (byte)context;
+        }
+        previous = context;
+        if (reader.isExhausted() && reader.available() < 0) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman data ends before the length recorded in its header.");
+        }
+        return length;
+    }
+
+    private int[] cluster(int maxTables) {
+        final int[] owner = new int[ALPHABET];
+        final long[][] members = new long[ALPHABET][];
+        final double[] cost = new double[ALPHABET];
+        int live = 0;
+        for (int context = 0; context < ALPHABET; ++context) {
+            owner[context] = -1;
+            for (long value : counts[context]) {
+                if (value != 0) {
+                    owner[context] = context;
+                    members[context] = counts[context].clone();
+                    cost[context] = cost(members[context]);
+                    ++live;
+                    break;
+                }
+            }
+        }
+        final double[][] gain = new double[ALPHABET][ALPHABET];
+        final long[] scratch = new long[ALPHABET];
+        for (int a = 0; a < ALPHABET; ++a) {
+            for (int b = a + 1; b < ALPHABET && members[a] != null; ++b) {
+                if (members[b] != null) {
+                    gain[a][b] = mergedCost(members[a], members[b], scratch) - cost[a] - cost[b];
+                }
+            }
+        }
+        while (live > 1) {
+            int bestA = -1;
+            int bestB = -1;
+            for (int a = 0; a < ALPHABET; ++a) {
+                for (int b = a + 1; b < ALPHABET && members[a] != null; ++b) {
+                    if (members[b] != null && (bestA < 0 || gain[a][b] < gain[bestA][bestB])) {
+                        bestA = a;
+                        bestB = b;
+                    }
+                }
+            }
+            if (live <= maxTables && gain[bestA][bestB] >= 0) {
+                break;
+            }
+            for (int symbol = 0; symbol < ALPHABET; ++symbol) {
+                members[bestA][symbol] += members[bestB][symbol];
+            }
+            members[bestB] = null;
+            cost[bestA] = cost(members[bestA]);
+            for (int context = 0; context < ALPHABET; ++context) {
+                if (owner[context] == bestB) {
+                    owner[context] = bestA;
+                }
+            }
+            --live;
+            for (int other = 0; other < ALPHABET; ++other) {
+                if (other != bestA && members[other] != null) {
+                    final double merged = mergedCost(members[bestA], members[other], scratch) - cost[bestA] - cost[other];
+                    gain[Math.min(bestA, other)][Math.max(bestA, other)] = merged;
+                }
+            }
+        }
+        return owner;
+    }
+
+    private static double mergedCost(long[] lhs, long[] rhs, long[] scratch) {
+        for (int symbol = 0; symbol < ALPHABET; ++symbol) {
+            scratch[symbol] = lhs[symbol] + rhs[symbol];
+        }
+        return cost(scratch);
+    }
+
+    private static double cost(long[] histogram) {
+        long total = 0;
+        double sum = 0;
+        int symbols = 0;
+        for (long value : histogram) {
+            if (value != 0) {
+                total += value;
+                sum += value < X_LOG_X.length ? X_LOG_X[(int)value] : value * Math.log(value);
+                ++symbols;
+            }
+        }
+        final double entropy = total == 0 ? 0 : (total * Math.log(total) - sum) / Math.log(2);
+        return entropy + TABLE_OVERHEAD_BITS + Math.min(ALPHABET, 2 * symbols) + symbols * LENGTH_ESTIMATE_BITS;
+    }
+
+    private static int mapBits(int tables) {
+        return tables <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(tables - 1);
+    }
+}
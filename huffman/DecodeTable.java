@@ -0,0 +1,206 @@
+package huffman;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class DecodeTable {
+    public static final int PRIMARY_BITS = 11;
+    public static final int MAX_PRIMARY_BITS = 16;
+    private static final int MAX_SYMBOLS = 3;
+    private static final int COUNT_SHIFT = 24;
+    private static final int COUNT_MASK = 0x3;
+    private static final int BITS_SHIFT = 26;
+    private static final int PAYLOAD_MASK = 0xFFFFFF;
+
+    private final CodeTable codes;
+    private final int primaryBits;
+    private final boolean wide;
+    private int[] entries;
+    private int size = 0;
+
+    public DecodeTable(CodeTable codes) {
+        this(codes, PRIMARY_BITS);
+    }
+
+    public DecodeTable(CodeTable codes, int primaryBits) {
+        this.codes = codes;
+        this.primaryBits = Math.max(1, Math.min(MAX_PRIMARY_BITS, primaryBits));
+        this.wide = codes.getRange() > 1 << Byte.SIZE;
+        this.entries = new int[1 << this.primaryBits];
+
+        final List<Integer> symbols = new ArrayList<>();
+        for (int i = 0; i < codes.getRange(); ++i) {
+            if (codes.getLength(i) > 0) {
+                symbols.add(i);
+            }
+        }
+        build(0, this.primaryBits, symbols);
+        if (!wide) {
+            combine();
+        }
+    }
+
+    public int getPrimaryBits() {
+        return primaryBits;
+    }
+
+    public int getTableSize() {
+        return size;
+    }
+
+    public int decode(BitReader reader, int trailing, byte[] output) throws IOException {
+        return decode(reader, trailing, output, 0, output.length);
+    }
+
+    public int decode(BitReader reader, int trailing, byte[] output, int offset, int length) throws IOException {
+        final int end = offset + length;
+        final int limit = end - MAX_SYMBOLS;
+        int slot = offset;
+        while (slot <= limit) {
+            reader.refill();
+            if (reader.isExhausted()) {
+                break;
+            }
+            final int entry = entries[reader.peek(primaryBits)];
+            final int count = (entry >>> COUNT_SHIFT) & COUNT_MASK;
+            if (count != 0) {
+                output[slot] = (byte)entry;
+                output[slot + 1] = (byte)(entry >>> Byte.SIZE);
+                output[slot + 2] = (byte)(entry >>> (2 * Byte.SIZE));
+                slot += count;
+                reader.skip(entry >>> BITS_SHIFT);
+            }
+            else {
+                output[slot++] = (byte)longSymbol(reader, entry);
+            }
+        }
+        while (slot < end) {
+            reader.refill();
+            final boolean exhausted = reader.isExhausted();
+            final int valid = reader.available() - trailing;
+            if (exhausted && valid <= 0) {
+                break;
+            }
+            final int entry = entries[reader.peek(primaryBits)];
+            final int symbol;
+            if (((entry >>> COUNT_SHIFT) & COUNT_MASK) != 0) {
+                symbol = entry & 0xFF;
+                reader.skip(codes.getLength(symbol));
+            }
+            else {
+                symbol = longSymbol(reader, entry);
+            }
+            if (exhausted && codes.getLength(symbol) > valid) {
+                break;
+            }
+            output[slot++] = (byte)symbol;
+        }
+        return slot - offset;
+    }
+
+    public int decodeWide(BitReader reader, byte[] output, int offset, int length) throws IOException {
+        final int end = offset + length;
+        int slot = offset;
+        for (; slot + 1 < end; slot += 2) {
+            final int symbol = decodeSymbol(reader);
+            output[slot] = (byte)(symbol >>> Byte.SIZE);
+            output[slot + 1] = (byte)symbol;
+        }
+        if (slot < end) {
+            output[slot++] = (byte)(decodeSymbol(reader) >>> Byte.SIZE);
+        }
+        return slot - offset;
+    }
+
+    public int decodeSymbol(BitReader reader) throws IOException {
+        reader.refill();
+        final int entry = entries[reader.peek(primaryBits)];
+        if (((entry >>> COUNT_SHIFT) & COUNT_MASK) != 0) {
+            final int symbol = wide ? entry & PAYLOAD_MASK : entry & 0xFF;
+            reader.skip(codes.getLength(symbol));
+            return symbol;
+        }
+        return longSymbol(reader, entry);
+    }
+
+    private int longSymbol(BitReader reader, int entry) throws IOException {
+        int width = primaryBits;
+        while (((entry >>> COUNT_SHIFT) & COUNT_MASK) == 0) {
+            final int next = entry >>> BITS_SHIFT;
+            if (next == 0) {
+                throw new HuffmanCoding.HuffmanBadHeader("Encoded data contains a code that is not part of the huffman tree.");
+            }
+            reader.skip(width);
+            reader.refill();
+            entry = entries[(entry & PAYLOAD_MASK) + reader.peek(next)];
+            width = next;
+        }
+        reader.skip(entry >>> BITS_SHIFT);
+        return entry & PAYLOAD_MASK;
+    }
+
+    private int build(int depth, int width, List<Integer> symbols) {
+        final int offset = allocate(width);
+        final Map<Integer, List<Integer>> deeper = new TreeMap<>();
+        for (int symbol : symbols) {
+            final long code = codes.getCode(symbol);
+            final int local = codes.getLength(symbol) - depth;
+            if (local <= width) {
+                final int index = offset + ((int)(code & ((1L << local) - 1)) << (width - local));
+                final int entry = symbol | (1 << COUNT_SHIFT) | (local << BITS_SHIFT);
+                Arrays.fill(entries, index, index + (1 << (width - local)), entry);
+            }
+            else {
+                final int slot = (int)((code >>> (local - width)) & ((1 << width) - 1));
+                deeper.computeIfAbsent(slot, (Integer ignored) -> new ArrayList<>()).add(symbol);
+            }
+        }
+        for (var group : deeper.entrySet()) {
+            int longest = 0;
+            for (int symbol : group.getValue()) {
+                longest = Math.max(longest, codes.getLength(symbol) - depth - width);
+            }
+            final int next = Math.min(primaryBits, longest);
+            final int table = build(depth + width, next, group.getValue());
+            entries[offset + group.getKey()] = table | (next << BITS_SHIFT);
+        }
+        return offset;
+    }
+
+    private int allocate(int width) {
+        final int offset = size;
+        size += 1 << width;
+        if (size > entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(size, entries.length * 2));
+        }
+        return offset;
+    }
+
+    private void combine() {
+        final int mask = (1 << primaryBits) - 1;
+        final int[] single = Arrays.copyOf(entries, 1 << primaryBits);
+        for (int index = 0; index <= mask; ++index) {
+            int entry = single[index];
+            if (((entry >>> COUNT_SHIFT) & COUNT_MASK) != 1) {
+                continue;
+            }
+            int used = entry >>> BITS_SHIFT;
+            int packed = entry & 0xFF;
+            int count = 1;
+            while (count < MAX_SYMBOLS && used < primaryBits) {
+                final int next = single[(index << used) & mask];
+                if (((next >>> COUNT_SHIFT) & COUNT_MASK) != 1 || (next >>> BITS_SHIFT) > primaryBits - used) {
+                    break;
+                }
+                packed |= (next & 0xFF) << (Byte.SIZE * count);
+                used += next >>> BITS_SHIFT;
+                ++count;
+            }
+            entries[index] = packed | (count << COUNT_SHIFT) | (used << BITS_SHIFT);
+        }
+    }
+}
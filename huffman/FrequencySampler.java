@@ -0,0 +1,92 @@
+package huffman;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class FrequencySampler {
+    public static final double MIN_FRACTION = 1e-4;
+
+    private final double fraction;
+    private final int maxCodeLength;
+    private long length = 0;
+    private long sampledBytes = 0;
+    private long lossBits = 0;
+
+    public FrequencySampler(double fraction, int maxCodeLength) {
+        if (!(fraction >= MIN_FRACTION && fraction <= 1)) {
+            throw new IllegalArgumentException("Sample fraction must be between " + MIN_FRACTION + " and 1.");
+        }
+        this.fraction = fraction;
+        this.maxCodeLength = maxCodeLength;
+    }
+
+    public double getFraction() {
+        return fraction;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getSampledBytes() {
+        return sampledBytes;
+    }
+
+    public boolean isSampled() {
+        return sampledBytes < length;
+    }
+
+    public long getEstimatedLossBits() {
+        return lossBits;
+    }
+
+    public TableCounter sample(FileChannel channel, byte[] buffer, Progress progress) throws IOException {
+        length = channel.size();
+        final long blocks = (length + buffer.length - 1) / buffer.length;
+        final long samples = Math.max(1, Math.min(blocks, (long)Math.ceil(blocks * fraction)));
+        final TableCounter[] halves = new TableCounter[] {new TableCounter(256), new TableCounter(256)};
+        final ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        sampledBytes = 0;
+        for (long i = 0; i < samples && blocks > 0; ++i) {
+            final long position = (long)((double)i * blocks / samples) * buffer.length;
+            wrapper.clear();
+            while (wrapper.hasRemaining() && channel.read(wrapper, position + wrapper.position()) > 0) {
+                continue;
+            }
+            halves[(int)(i & 1)].count(buffer, 0, wrapper.position());
+            sampledBytes += wrapper.position();
+            progress.set(i + 1, samples);
+        }
+        final TableCounter sample = new TableCounter(256);
+        sample.addAll(halves[0]);
+        sample.addAll(halves[1]);
+        if (!isSampled()) {
+            lossBits = 0;
+            return sample;
+        }
+        final TableCounter estimate = smooth(sample);
+        final CodeTable chosen = codesFor(estimate);
+        final CodeTable half = codesFor(smooth(halves[0]));
+        final long held = halves[1].getTotal();
+        final double heldOut = held == 0 ? 0 : (double)(half.getCompressionSize(halves[1]) - chosen.getCompressionSize(halves[1])) / held;
+        final double smoothing = (double)(chosen.getCompressionSize(sample) - codesFor(sample).getCompressionSize(sample)) / sampledBytes;
+        lossBits = (long)Math.ceil(Math.max(0, heldOut + smoothing) * length);
+        return estimate;
+    }
+
+    private TableCounter smooth(TableCounter sample) {
+        final TableCounter estimate = new TableCounter(sample.getRange());
+        final double scale = (double)length / Math.max(1, sample.getTotal());
+        for (int symbol = 0; symbol < sample.getRange(); ++symbol) {
+            estimate.add(symbol, Math.max(1, Math.round(sample.get(symbol) * scale)));
+        }
+        return estimate;
+    }
+
+    private CodeTable codesFor(TableCounter counts) {
+        final HuffmanTree tree = new HuffmanTree();
+        tree.initialize(counts, maxCodeLength);
+        return tree.getCodeTable();
+    }
+}
@@ -0,0 +1,269 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+public class HistogramCache {
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final HistogramCache SHARED = new HistogramCache(DEFAULT_CAPACITY, false);
+    private static final int SIDECAR_MAGIC = 0x48464331;
+
+    private final int capacity;
+    private final boolean fingerprinted;
+    private final Path sidecar;
+    private final LinkedHashMap<Key, Entry> entries;
+    private long hits = 0;
+    private long misses = 0;
+    private boolean dirty = false;
+
+    public static class Key {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final long fingerprint;
+
+        public Key(String path, long size, long modified, long fingerprint) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.fingerprint = fingerprint;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+
+        public long getFingerprint() {
+            return fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key rhs = (Key)other;
+            return path.equals(rhs.path) && size == rhs.size && modified == rhs.modified && fingerprint == rhs.fingerprint;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, modified, fingerprint);
+        }
+    }
+
+    public static class Entry {
+        private final TableCounter counts;
+        private CodeTable codes = null;
+        private int maxCodeLength = 0;
+        private long optimalSize = 0;
+
+        private Entry(TableCounter counts) {
+            this.counts = copy(counts);
+        }
+
+        public TableCounter getCounts() {
+            return copy(counts);
+        }
+
+        public synchronized CodeTable getCodes(int maxCodeLength) {
+            return this.maxCodeLength == maxCodeLength ? codes : null;
+        }
+
+        public synchronized long getOptimalSize() {
+            return optimalSize;
+        }
+
+        public synchronized void setCodes(int maxCodeLength, CodeTable codes, long optimalSize) {
+            this.maxCodeLength = maxCodeLength;
+            this.codes = codes;
+            this.optimalSize = optimalSize;
+        }
+    }
+
+    public HistogramCache(int capacity, boolean fingerprinted) {
+        this(capacity, fingerprinted, null);
+    }
+
+    public HistogramCache(int capacity, boolean fingerprinted, Path sidecar) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Histogram cache must hold at least one entry.");
+        }
+        this.capacity = capacity;
+        this.fingerprinted = fingerprinted;
+        this.sidecar = sidecar;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > HistogramCache.this.capacity;
+            }
+        };
+        if (sidecar != null && Files.isRegularFile(sidecar)) {
+            load();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isFingerprinted() {
+        return fingerprinted;
+    }
+
+    public Path getSidecar() {
+        return sidecar;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public Key keyOf(Path source, CodecContext context) throws IOException {
+        final Path path = source.toAbsolutePath().normalize();
+        final long size = Files.size(path);
+        final long modified = Files.getLastModifiedTime(path).toMillis();
+        return new Key(path.toString(), size, modified, fingerprinted ? fingerprint(path, context.getInputBuffer()) : 0);
+    }
+
+    public synchronized Entry get(Key key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            ++misses;
+        }
+        else {
+            ++hits;
+        }
+        return entry;
+    }
+
+    public synchronized Entry put(Key key, TableCounter counts) {
+        final Entry entry = new Entry(counts);
+        entries.put(key, entry);
+        dirty = true;
+        return entry;
+    }
+
+    public synchronized void remove(Key key) {
+        if (entries.remove(key) != null) {
+            dirty = true;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        dirty = true;
+    }
+
+    public void save() {
+        if (sidecar == null) {
+            return;
+        }
+        final Map<Key, TableCounter> snapshot = new LinkedHashMap<>();
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            for (var entry : entries.entrySet()) {
+                snapshot.put(entry.getKey(), entry.getValue().counts);
+            }
+            dirty = false;
+        }
+        write(snapshot);
+    }
+
+    private static long fingerprint(Path path, byte[] buffer) throws IOException {
+        final CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+            while (channel.read(wrapper.clear()) >= 0) {
+                crc.update(wrapper.flip());
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static TableCounter copy(TableCounter counts) {
+        final TableCounter copy = new TableCounter(counts.getRange());
+        copy.addAll(counts);
+        return copy;
+    }
+
+    private void load() {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (input.readInt() != SIDECAR_MAGIC) {
+                return;
+            }
+            final int count = input.readInt();
+            for (int i = 0; i < count; ++i) {
+                final Key key = new Key(input.readUTF(), input.readLong(), input.readLong(), input.readLong());
+                final int range = input.readInt();
+                if (range != 256) {
+                    entries.clear();
+                    return;
+                }
+                final TableCounter counts = new TableCounter(range);
+                for (int symbol = 0; symbol < counts.getRange(); ++symbol) {
+                    counts.add(symbol, input.readLong());
+                }
+                entries.put(key, new Entry(counts));
+            }
+        } catch (IOException | RuntimeException e) {
+            entries.clear();
+        }
+    }
+
+    private void write(Map<Key, TableCounter> snapshot) {
+        final Path temporary = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                output.writeInt(SIDECAR_MAGIC);
+                output.writeInt(snapshot.size());
+                for (var entry : snapshot.entrySet()) {
+                    final Key key = entry.getKey();
+                    final TableCounter counts = entry.getValue();
+                    output.writeUTF(key.path);
+                    output.writeLong(key.size);
+                    output.writeLong(key.modified);
+                    output.writeLong(key.fingerprint);
+                    output.writeInt(counts.getRange());
+                    for (int symbol = 0; symbol < counts.getRange(); ++symbol) {
+                        output.writeLong(counts.get(symbol));
+                    }
+                }
+            }
+            Files.move(temporary, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ioe) {
+            throw new HuffmanCoding.HuffmanIOExcept();
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+public class HuffmanArchive implements Closeable {
+    public static final int FLAG_ARCHIVE = 0x10;
+    public static final String EXTENSION = ".hfa";
+    private static final int TRAILER_BYTES = Long.BYTES;
+    private static final int MAX_NAME_BYTES = 4096;
+
+    private final FileChannel channel;
+    private final CodeTable shared;
+    private final DecodeTable sharedDecoder;
+    private final boolean checked;
+    private final boolean storable;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final CodecContext.Pool pool;
+
+    public static class Entry {
+        private final String name;
+        private final long size;
+        private final long compressedSize;
+        private final long offset;
+        private final int checksum;
+        private final boolean stored;
+
+        public Entry(String name, long size, long compressedSize, long offset) {
+            this(name, size, compressedSize, offset, 0, false);
+        }
+
+        public Entry(String name, long size, long compressedSize, long offset, int checksum, boolean stored) {
+            this.name = name;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.offset = offset;
+            this.checksum = checksum;
+            this.stored = stored;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getChecksum() {
+            return checksum;
+        }
+
+        public boolean isStored() {
+            return stored;
+        }
+    }
+
+    public HuffmanArchive(Path archive) throws IOException {
+        this(archive, CodecContext.Pool.SHARED);
+    }
+
+    public HuffmanArchive(Path archive, CodecContext.Pool pool) throws IOException {
+        this.pool = pool;
+        this.channel = FileChannel.open(archive, StandardOpenOption.READ);
+        try {
+            final InputStream header = new BufferedInputStream(new ChannelInputStream(channel, 0, channel.size()), 4096);
+            final int high = header.read();
+            final int low = header.read();
+            if (high < 0 || low < 0 || (short)((high << 8) | low) != HuffmanCoding.SIGNATURE_VERSIONED) {
+                throw new HuffmanCoding.HuffmanBadSignature();
+            }
+            final int version = header.read();
+            if (version != HuffmanCoding.VERSION) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman archive uses an unsupported format version(" + version + ").");
+            }
+            final int flags = header.read();
+            if ((flags & ~(FLAG_ARCHIVE | BlockContainer.FLAG_SHARED_TABLE | HuffmanCoding.FLAG_CHECKSUM | HuffmanCoding.FLAG_STORED)) != 0 || (flags & FLAG_ARCHIVE) == 0) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman source is not an archive.");
+            }
+            checked = (flags & HuffmanCoding.FLAG_CHECKSUM) != 0;
+            storable = (flags & HuffmanCoding.FLAG_STORED) != 0;
+            shared = (flags & BlockContainer.FLAG_SHARED_TABLE) != 0 ? CodeTable.readLengths(header, 256) : null;
+            sharedDecoder = shared == null ? null : new DecodeTable(shared);
+            readDirectory();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public boolean isShared() {
+        return shared != null;
+    }
+
+    public boolean isChecked() {
+        return checked;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries.values()));
+    }
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    public void extract(String name, Path destination) throws IOException {
+        final Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IOException("Huffman archive has no entry named " + name + ".");
+        }
+        extract(entry, destination);
+    }
+
+    public void extractAll(Path directory, Progress progress) throws IOException {
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        progress.set(0, entries.size());
+        for (Entry entry : entries.values()) {
+            final Path destination = resolve(directory, entry.name);
+            tasks.add(() -> {
+                Files.createDirectories(destination.getParent());
+                extract(entry, destination);
+                progress.add(1);
+                return null;
+            });
+        }
+        runAll(tasks);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void create(Path archive, Map<String, Path> files, boolean sharedTable, int maxCodeLength, Progress progress) throws IOException {
+        create(archive, files, sharedTable, maxCodeLength, CodecContext.Pool.SHARED, progress);
+    }
+
+    public static void create(Path archive, Map<String, Path> files, boolean sharedTable, int maxCodeLength, CodecContext.Pool pool, Progress progress) throws IOException {
+        final String[] names = files.keySet().toArray(new String[0]);
+        final List<Path> sources = new ArrayList<>(files.values());
+        final TableCounter[] counters = new TableCounter[names.length];
+        final List<Callable<Void>> counting = new ArrayList<>();
+        for (int i = 0; i < names.length; ++i) {
+            final int index = i;
+            counting.add(() -> {
+                counters[index] = countFile(sources.get(index), pool);
+                return null;
+            });
+        }
+        runAll(counting);
+        progress.set(3L * names.length, 10L * names.length);
+
+        final CodeTable sharedCodes;
+        if (sharedTable) {
+            final TableCounter total = new TableCounter(256);
+            for (TableCounter counter : counters) {
+                total.addAll(counter);
+            }
+            sharedCodes = buildTable(total, maxCodeLength);
+        }
+        else {
+            sharedCodes = null;
+        }
+        final CodeTable[] tables = new CodeTable[names.length];
+        final long[] offsets = new long[names.length];
+        final long[] compressed = new long[names.length];
+        final int[] checksums = new int[names.length];
+        final boolean[] stored = new boolean[names.length];
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        final BitWriter headerWriter = new BitWriter(header);
+        headerWriter.write(HuffmanCoding.SIGNATURE_VERSIONED, Short.SIZE);
+        headerWriter.writeByte(HuffmanCoding.VERSION);
+        headerWriter.writeByte((sharedTable ? FLAG_ARCHIVE | BlockContainer.FLAG_SHARED_TABLE : FLAG_ARCHIVE) | HuffmanCoding.FLAG_CHECKSUM | HuffmanCoding.FLAG_STORED);
+        if (sharedTable) {
+            sharedCodes.writeLengths(headerWriter);
+        }
+        headerWriter.finish();
+
+        long offset = header.size();
+        for (int i = 0; i < names.length; ++i) {
+            tables[i] = sharedTable ? sharedCodes : buildTable(counters[i], maxCodeLength);
+            compressed[i] = (tables[i].getCompressionSize(counters[i]) + Byte.SIZE - 1) / Byte.SIZE + (sharedTable ? 0 : tables[i].getLengthTableBytes());
+            stored[i] = compressed[i] >= counters[i].getTotal();
+            if (stored[i]) {
+                compressed[i] = counters[i].getTotal();
+            }
+            offsets[i] = offset;
+            offset += compressed[i];
+        }
+
+        try (FileChannel output = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(output, ByteBuffer.wrap(header.toByteArray()), 0);
+            final List<Callable<Void>> encoding = new ArrayList<>();
+            for (int i = 0; i < names.length; ++i) {
+                final int index = i;
+                encoding.add(() -> {
+                    checksums[index] = encodeFile(sources.get(index), new ChannelOutputStream(output, offsets[index], compressed[index]), tables[index], !sharedTable, stored[index], counters[index], pool);
+                    progress.add(7);
+                    return null;
+                });
+            }
+            runAll(encoding);
+
+            final ByteArrayOutputStream directory = new ByteArrayOutputStream();
+            final BitWriter writer = new BitWriter(directory);
+            writer.writeVarInt(names.length);
+            for (int i = 0; i < names.length; ++i) {
+                final byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+                writer.writeVarInt(name.length);
+                for (byte value : name) {
+                    writer.writeByte(value);
+                }
+                writer.writeVarInt(counters[i].getTotal());
+                writer.writeVarInt(compressed[i] << 1 | (stored[i] ? 1 : 0));
+                writer.write(checksums[i] & 0xFFFFFFFFL, Integer.SIZE);
+            }
+            writer.write(offset, Long.SIZE);
+            writer.finish();
+            writeFully(output, ByteBuffer.wrap(directory.toByteArray()), offset);
+        }
+    }
+
+    private void readDirectory() throws IOException {
+        final long length = channel.size();
+        if (length < TRAILER_BYTES) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman archive is missing its central directory.");
+        }
+        final ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+        readFully(channel, trailer, length - TRAILER_BYTES);
+        final long directoryOffset = trailer.flip().getLong();
+        if (directoryOffset < 0 || directoryOffset > length - TRAILER_BYTES) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman archive has an impossible directory offset.");
+        }
+        final InputStream directory = new BufferedInputStream(new ChannelInputStream(channel, directoryOffset, length - TRAILER_BYTES - directoryOffset), 65536);
+        final long count = BitReader.readVarInt(directory);
+        if (count > length - TRAILER_BYTES - directoryOffset) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman archive directory is truncated.");
+        }
+        long offset = directoryOffset;
+        final List<Entry> listed = new ArrayList<>();
+        for (long i = 0; i < count; ++i) {
+            final long nameLength = BitReader.readVarInt(directory);
+            if (nameLength > MAX_NAME_BYTES) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman archive has an entry name longer than " + MAX_NAME_BYTES + " bytes.");
+            }
+            final byte[] name = directory.readNBytes((int)nameLength);
+            if (name.length != nameLength) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman archive directory is truncated.");
+            }
+            final long size = BitReader.readVarInt(directory);
+            final long packed = BitReader.readVarInt(directory);
+            final long compressedSize = storable ? packed >>> 1 : packed;
+            final boolean stored = storable && (packed & 1) != 0;
+            if (size < 0 || compressedSize < 0 || compressedSize > offset || (stored && compressedSize != size)) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman archive directory describes an impossible entry.");
+            }
+            int checksum = 0;
+            if (checked) {
+                final byte[] crc = directory.readNBytes(Integer.BYTES);
+                if (crc.length != Integer.BYTES) {
+                    throw new HuffmanCoding.HuffmanBadHeader("Huffman archive directory is truncated.");
+                }
+                checksum = ByteBuffer.wrap(crc).getInt();
+            }
+            offset -= compressedSize;
+            listed.add(new Entry(new String(name, StandardCharsets.UTF_8), size, compressedSize, 0, checksum, stored));
+        }
+        for (Entry entry : listed) {
+            if (entries.put(entry.name, new Entry(entry.name, entry.size, entry.compressedSize, offset, entry.checksum, entry.stored)) != null) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman archive contains " + entry.name + " more than once.");
+            }
+            offset += entry.compressedSize;
+        }
+    }
+
+    private void extract(Entry entry, Path destination) throws IOException {
+        final CodecContext context = pool.acquire();
+        try (OutputStream output = Files.newOutputStream(destination)) {
+            final InputStream input = new ChannelInputStream(channel, entry.offset, entry.compressedSize);
+            if (entry.stored) {
+                copy(entry, input, output, context.getOutputBuffer());
+                return;
+            }
+            final DecodeTable decoder;
+            final BitReader reader;
+            if (shared == null) {
+                final InputStream buffered = new BufferedInputStream(input, 4096);
+                decoder = new DecodeTable(CodeTable.readLengths(buffered, 256));
+                reader = context.createReader(buffered);
+            }
+            else {
+                decoder = sharedDecoder;
+                reader = context.createReader(input);
+            }
+            final byte[] buffer = context.getOutputBuffer();
+            final CRC32C crc = new CRC32C();
+            long remaining = entry.size;
+            while (remaining > 0) {
+                final int decoded = decoder.decode(reader, 0, buffer, 0, (int)Math.min(buffer.length, remaining));
+                if (decoded == 0) {
+                    throw new HuffmanCoding.HuffmanBadHeader("Huffman archive entry " + entry.name + " ended " + remaining + " bytes early.");
+                }
+                crc.update(buffer, 0, decoded);
+                output.write(buffer, 0, decoded);
+                remaining -= decoded;
+            }
+            if (checked && (int)crc.getValue() != entry.checksum) {
+                throw new HuffmanCoding.HuffmanBadChecksum("Huffman archive entry " + entry.name);
+            }
+        } finally {
+            pool.release(context);
+        }
+    }
+
+    private void copy(Entry entry, InputStream input, OutputStream output, byte[] buffer) throws IOException {
+        final CRC32C crc = new CRC32C();
+        long remaining = entry.size;
+        while (remaining > 0) {
+            final int read = input.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman archive entry " + entry.name + " ended " + remaining + " bytes early.");
+            }
+            crc.update(buffer, 0, read);
+            output.write(buffer, 0, read);
+            remaining -= read;
+        }
+        if (checked && (int)crc.getValue() != entry.checksum) {
+            throw new HuffmanCoding.HuffmanBadChecksum("Huffman archive entry " + entry.name);
+        }
+    }
+
+    private static Path resolve(Path directory, String name) throws HuffmanCoding.HuffmanBadHeader {
+        final Path destination = directory.resolve(name).normalize();
+        if (name.isEmpty() || Path.of(name).isAbsolute() || !destination.startsWith(directory.normalize())) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman archive entry " + name + " would extract outside of the destination.");
+        }
+        return destination;
+    }
+
+    public static String nameOf(Path root, Path source) {
+        final Path relative = root == null ? source.getFileName() : root.relativize(source);
+        final StringBuilder name = new StringBuilder();
+        for (Path part : relative) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(part);
+        }
+        return name.toString();
+    }
+
+    private static CodeTable buildTable(TableCounter counter, int maxCodeLength) {
+        final HuffmanTree tree = new HuffmanTree();
+        tree.initialize(counter, maxCodeLength);
+        return tree.getCodeTable().canonical();
+    }
+
+    private static TableCounter countFile(Path source, CodecContext.Pool pool) throws IOException {
+        final TableCounter counter = new TableCounter(256);
+        final CodecContext context = pool.acquire();
+        try (InputStream input = Files.newInputStream(source)) {
+            final byte[] buffer = context.getInputBuffer();
+            int read;
+            while ((read = input.read(buffer, 0, buffer.length)) >= 0) {
+                counter.count(buffer, 0, read);
+            }
+        } finally {
+            pool.release(context);
+        }
+        return counter;
+    }
+
+    private static int encodeFile(Path source, ChannelOutputStream output, CodeTable table, boolean writeTable, boolean store, TableCounter counter, CodecContext.Pool pool) throws IOException {
+        final long expected = counter.getTotal();
+        final TableCounter recount = new TableCounter(256);
+        final CodecContext context = pool.acquire();
+        try (InputStream input = Files.newInputStream(source)) {
+            final byte[] buffer = context.getInputBuffer();
+            final BitWriter writer = context.createWriter(output);
+            if (writeTable && !store) {
+                table.writeLengths(writer);
+            }
+            final CRC32C crc = new CRC32C();
+            long total = 0;
+            int read;
+            while ((read = input.read(buffer, 0, buffer.length)) >= 0) {
+                total += read;
+                if (total > expected) {
+                    break;
+                }
+                crc.update(buffer, 0, read);
+                recount.count(buffer, 0, read);
+                if (store) {
+                    writer.writeBytes(buffer, 0, read);
+                    continue;
+                }
+                for (int i = 0; i < read; ++i) {
+                    final int symbol = buffer[i] & 0xFF;
+                    writer.write(table.getCode(symbol), table.getLength(symbol));
+                }
+            }
+            if (total != expected || !recount.matches(counter)) {
+                throw new IOException(source + " changed while it was being archived.");
+            }
+            writer.finish();
+            if (output.getRemaining() != 0) {
+                throw new IOException(source + " was written in " + output.getWritten() + " bytes instead of the " + (output.getWritten() + output.getRemaining()) + " reserved for it.");
+            }
+            return (int)crc.getValue();
+        } finally {
+            pool.release(context);
+        }
+    }
+
+    private static void runAll(List<Callable<Void>> tasks) throws IOException {
+        final List<Future<Void>> pending = new ArrayList<>();
+        for (Callable<Void> task : tasks) {
+            pending.add(ForkJoinPool.commonPool().submit(task));
+        }
+        Throwable failure = null;
+        for (Future<Void> future : pending) {
+            try {
+                future.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ie);
+            } catch (ExecutionException ee) {
+                if (failure == null) {
+                    failure = ee.getCause();
+                }
+            }
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException)failure;
+        }
+        if (failure != null) {
+            throw failure instanceof IOException ? (IOException)failure : new IOException(failure);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        final int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position() - start);
+        }
+    }
+
+    private static class ChannelOutputStream extends OutputStream {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private long position;
+
+        public ChannelOutputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.start = position;
+            this.end = position + length;
+            this.position = position;
+        }
+
+        public long getWritten() {
+            return position - start;
+        }
+
+        public long getRemaining() {
+            return end - position;
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            write(new byte[] {(byte)value}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if (length > end - position) {
+                throw new IOException("Archive entry overflows the " + (end - start) + " bytes reserved for it.");
+            }
+            writeFully(channel, ByteBuffer.wrap(data, offset, length), position);
+            position += length;
+        }
+    }
+}
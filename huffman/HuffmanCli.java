@@ -0,0 +1,637 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+public class HuffmanCli {
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_NO_INPUT = 3;
+    public static final String EXTENSION = ".huf";
+    private static final String STANDARD_STREAM = "-";
+    private static final Set<String> FILE_ONLY_OPTIONS = Set.of("--adaptive", "--legacy", "--shared", "--mapped", "--no-checksum", "--context", "--context-tables",
+        "--symbol-width", "--sample", "--cache", "--cache-verify", "--cache-size", "--dictionary", "--seek-interval");
+
+    public enum Command {
+        ENCODE,
+        DECODE,
+        ARCHIVE,
+        EXTRACT,
+        LIST,
+        RANGE,
+        TRAIN
+    }
+
+    private final PrintStream log;
+    private Command command = Command.ENCODE;
+    private boolean decode = false;
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    private Path outputDirectory = null;
+    private boolean force = false;
+    private boolean quiet = false;
+    private boolean adaptive = false;
+    private boolean legacy = false;
+    private boolean shared = false;
+    private boolean mapped = false;
+    private boolean checksum = true;
+    private int blockSize = 0;
+    private int seekInterval = 0;
+    private int contextTables = 0;
+    private int symbolWidth = Byte.SIZE;
+    private double sampleFraction = 1;
+    private Path cacheFile = null;
+    private boolean cacheVerify = false;
+    private int cacheSize = 0;
+    private HistogramCache cache = null;
+    private final List<Path> dictionaryFiles = new ArrayList<>();
+    private HuffmanDictionary dictionary = null;
+    private int maxCodeLength = HuffmanCoding.DEFAULT_MAX_LENGTH;
+    private final List<String> inputs = new ArrayList<>();
+    private String fileOnlyOption = null;
+    private int unmatched = 0;
+
+    public static class UsageException extends Exception {
+        public UsageException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Result {
+        public final long input;
+        public final long output;
+        public final String error;
+
+        public Result(long input, long output, String error) {
+            this.input = input;
+            this.output = output;
+            this.error = error;
+        }
+    }
+
+    public HuffmanCli(PrintStream log) {
+        this.log = log;
+    }
+
+    public static void main(String[] args) {
+        CodecMetrics.register();
+        System.exit(new HuffmanCli(System.err).run(args));
+    }
+
+    public int run(String[] args) {
+        try {
+            parse(args);
+        } catch (UsageException ue) {
+            log.println("huffman: " + ue.getMessage());
+            printUsage();
+            return EXIT_USAGE;
+        }
+        if (inputs.size() == 1 && inputs.get(0).equals(STANDARD_STREAM)) {
+            return runStandardStreams();
+        }
+        if (command == Command.EXTRACT || command == Command.LIST) {
+            return runExtract();
+        }
+        if (command == Command.RANGE) {
+            return runRange();
+        }
+
+        final Map<Path, String> files = new LinkedHashMap<>();
+        for (String input : command == Command.ARCHIVE || command == Command.TRAIN ? inputs.subList(1, inputs.size()) : inputs) {
+            try {
+                expand(input, files);
+            } catch (IOException | UsageException e) {
+                log.println("huffman: " + input + ": " + e.getMessage());
+                ++unmatched;
+            }
+        }
+        if (files.isEmpty()) {
+            log.println("huffman: no input files matched.");
+            return EXIT_NO_INPUT;
+        }
+        if (command == Command.ARCHIVE) {
+            return runArchive(files);
+        }
+        if (command == Command.TRAIN) {
+            return runTrain(new ArrayList<>(files.keySet()));
+        }
+        return runFiles(new ArrayList<>(files.keySet()));
+    }
+
+    private void parse(String[] args) throws UsageException {
+        if (args.length == 0) {
+            throw new UsageException("missing command.");
+        }
+        switch (args[0]) {
+            case "encode" -> command = Command.ENCODE;
+            case "decode" -> command = Command.DECODE;
+            case "archive" -> command = Command.ARCHIVE;
+            case "extract" -> command = Command.EXTRACT;
+            case "list" -> command = Command.LIST;
+            case "range" -> command = Command.RANGE;
+            case "train" -> command = Command.TRAIN;
+            default -> throw new UsageException("unknown command '" + args[0] + "'.");
+        }
+        decode = command == Command.DECODE;
+        for (int i = 1; i < args.length; ++i) {
+            final String arg = args[i];
+            if (fileOnlyOption == null && FILE_ONLY_OPTIONS.contains(arg)) {
+                fileOnlyOption = arg;
+            }
+            switch (arg) {
+                case "-j", "--jobs" -> jobs = parseInt(arg, value(args, ++i, arg), 1, 1024);
+                case "-o", "--output" -> outputDirectory = Paths.get(value(args, ++i, arg));
+                case "-f", "--force" -> force = true;
+                case "-q", "--quiet" -> quiet = true;
+                case "--adaptive" -> adaptive = true;
+                case "--legacy" -> legacy = true;
+                case "--shared" -> shared = true;
+                case "--mapped" -> mapped = true;
+                case "--no-checksum" -> checksum = false;
+                case "--context" -> contextTables = ContextModel.DEFAULT_TABLES;
+                case "--context-tables" -> contextTables = parseInt(arg, value(args, ++i, arg), 1, ContextModel.MAX_TABLES);
+                case "--symbol-width" -> symbolWidth = parseSymbolWidth(value(args, ++i, arg));
+                case "--sample" -> sampleFraction = parseFraction(arg, value(args, ++i, arg), FrequencySampler.MIN_FRACTION, 1);
+                case "--cache" -> cacheFile = Paths.get(value(args, ++i, arg));
+                case "--cache-verify" -> cacheVerify = true;
+                case "--cache-size" -> cacheSize = parseInt(arg, value(args, ++i, arg), 1, Integer.MAX_VALUE);
+                case "--dictionary" -> dictionaryFiles.add(Paths.get(value(args, ++i, arg)));
+                case "--block-size" -> blockSize = parseInt(arg, value(args, ++i, arg), BlockContainer.MIN_BLOCK_SIZE, BlockContainer.MAX_BLOCK_SIZE);
+                case "--seek-interval" -> seekInterval = parseInt(arg, value(args, ++i, arg), SeekIndex.MIN_INTERVAL, SeekIndex.MAX_INTERVAL);
+                case "--max-length" -> maxCodeLength = parseInt(arg, value(args, ++i, arg), 1, BitWriter.MAX_LENGTH);
+                default -> {
+                    if (arg.startsWith("-") && !arg.equals(STANDARD_STREAM)) {
+                        throw new UsageException("unknown option '" + arg + "'.");
+                    }
+                    inputs.add(arg);
+                }
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new UsageException("no input files given.");
+        }
+        if (command.compareTo(Command.ARCHIVE) >= 0) {
+            if (inputs.get(0).equals(STANDARD_STREAM)) {
+                throw new UsageException("archives cannot be streamed through '-'.");
+            }
+            if (command == Command.ARCHIVE && inputs.size() < 2) {
+                throw new UsageException("archive needs a destination and at least one input.");
+            }
+            if (command == Command.RANGE && inputs.size() != 3) {
+                throw new UsageException("range needs a file, an offset and a length.");
+            }
+            if (command == Command.TRAIN && inputs.size() < 2) {
+                throw new UsageException("train needs a destination and at least one sample file.");
+            }
+        }
+        if (cacheVerify && cacheFile == null) {
+            throw new UsageException("--cache-verify requires --cache.");
+        }
+        if (cacheSize > 0 && cacheFile == null) {
+            throw new UsageException("--cache-size requires --cache.");
+        }
+        if (inputs.contains(STANDARD_STREAM) && inputs.size() > 1) {
+            throw new UsageException("'-' cannot be combined with other inputs.");
+        }
+        if (inputs.contains(STANDARD_STREAM) && fileOnlyOption != null) {
+            throw new UsageException(fileOnlyOption + " cannot be used when streaming through '-'.");
+        }
+    }
+
+    private static String value(String[] args, int index, String option) throws UsageException {
+        if (index >= args.length) {
+            throw new UsageException(option + " requires a value.");
+        }
+        return args[index];
+    }
+
+    private static int parseInt(String option, String value, int min, int max) throws UsageException {
+        try {
+            final int parsed = Integer.parseInt(value);
+            if (parsed < min || parsed > max) {
+                throw new UsageException(option + " must be between " + min + " and " + max + ".");
+            }
+            return parsed;
+        } catch (NumberFormatException nfe) {
+            throw new UsageException(option + " expects a number, got '" + value + "'.");
+        }
+    }
+
+    private static double parseFraction(String option, String value, double min, double max) throws UsageException {
+        try {
+            final double parsed = Double.parseDouble(value);
+            if (!(parsed >= min && parsed <= max)) {
+                throw new UsageException(option + " must be between " + min + " and " + max + ".");
+            }
+            return parsed;
+        } catch (NumberFormatException nfe) {
+            throw new UsageException(option + " expects a fraction, got '" + value + "'.");
+        }
+    }
+
+    private static int parseSymbolWidth(String value) throws UsageException {
+        if (!value.equals(String.valueOf(Byte.SIZE)) && !value.equals(String.valueOf(Short.SIZE))) {
+            throw new UsageException("--symbol-width must be " + Byte.SIZE + " or " + Short.SIZE + ", got '" + value + "'.");
+        }
+        return Integer.parseInt(value);
+    }
+
+    private void printUsage() {
+        log.println("usage: huffman (encode|decode) [options] <file|directory|glob>... | -");
+        log.println("       huffman archive [options] <archive" + HuffmanArchive.EXTENSION + "> <file|directory|glob>...");
+        log.println("       huffman (extract|list) [options] <archive" + HuffmanArchive.EXTENSION + "> [entry...]");
+        log.println("       huffman range <file" + EXTENSION + "> <offset> <length>");
+        log.println("       huffman train [options] <dictionary" + HuffmanDictionary.EXTENSION + "> <file|directory|glob>...");
+        log.println("  -j, --jobs N           number of files processed in parallel");
+        log.println("  -o, --output DIR       write results to DIR instead of next to each input");
+        log.println("  -f, --force            overwrite existing outputs");
+        log.println("  -q, --quiet            only print errors and the summary");
+        log.println("      --adaptive         single pass adaptive coding");
+        log.println("      --legacy           write the v1 tree header");
+        log.println("      --shared           use one code table for every archive entry");
+        log.println("      --mapped           use memory-mapped I/O");
+        log.println("      --no-checksum      omit the length and CRC32C trailer");
+        log.println("      --context          order-1 coding with up to " + ContextModel.DEFAULT_TABLES + " context tables");
+        log.println("      --context-tables N order-1 coding with up to N context tables");
+        log.println("      --symbol-width N   code N-bit symbols (" + Byte.SIZE + ", or " + Short.SIZE + " for PCM and UTF-16 data)");
+        log.println("      --sample F         estimate the code table from a fraction F of the input");
+        log.println("      --cache FILE       reuse byte counts of unchanged inputs recorded in FILE");
+        log.println("      --cache-verify     also match cached inputs by a CRC32C of their content");
+        log.println("      --cache-size N     keep up to N inputs in the cache (default: the larger of " + HistogramCache.DEFAULT_CAPACITY + " and the input count)");
+        log.println("      --dictionary FILE  code with a trained dictionary instead of a per-file table");
+        log.println("      --block-size N     split inputs into independently coded blocks of N bytes");
+        log.println("      --max-length N     limit codes to N bits");
+        log.println("      --seek-interval N  record a seek checkpoint every N bytes for range reads");
+        log.println("  -                      stream stdin to stdout as self-describing blocks");
+    }
+
+    private void expand(String input, Map<Path, String> files) throws IOException, UsageException {
+        final int wildcard = firstWildcard(input);
+        if (wildcard < 0) {
+            final Path path = Paths.get(input);
+            if (Files.isDirectory(path)) {
+                if (walk(path, path.toAbsolutePath().normalize().getParent(), null, files) == 0) {
+                    throw new UsageException("no files matched.");
+                }
+            }
+            else if (Files.isRegularFile(path)) {
+                files.put(path, HuffmanArchive.nameOf(null, path));
+            }
+            else {
+                throw new UsageException("no such file or directory.");
+            }
+            return;
+        }
+        final int separator = Math.max(input.lastIndexOf('/', wildcard), input.lastIndexOf(File.separatorChar, wildcard));
+        final Path root = separator < 0 ? Paths.get("") : Paths.get(input.substring(0, separator + 1));
+        final PathMatcher matcher = root.getFileSystem().getPathMatcher("glob:" + input.substring(separator + 1));
+        if (walk(root, null, matcher, files) == 0) {
+            throw new UsageException("no files matched.");
+        }
+    }
+
+    private static int firstWildcard(String input) {
+        for (int i = 0; i < input.length(); ++i) {
+            if ("*?[{".indexOf(input.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int walk(Path root, Path names, PathMatcher matcher, Map<Path, String> files) throws IOException {
+        final Path base = root.toString().isEmpty() ? Paths.get(".") : root;
+        final List<Path> matched;
+        try (Stream<Path> stream = Files.walk(base)) {
+            matched = stream.filter(Files::isRegularFile)
+                .filter(path -> matcher == null || matcher.matches(base.relativize(path)))
+                .filter(path -> !decode || path.toString().endsWith(EXTENSION))
+                .filter(path -> decode || matcher != null || !path.toString().endsWith(EXTENSION))
+                .sorted()
+                .toList();
+        }
+        for (Path path : matched) {
+            files.put(path, names == null ? HuffmanArchive.nameOf(base, path) : HuffmanArchive.nameOf(names, path.toAbsolutePath().normalize()));
+        }
+        return matched.size();
+    }
+
+    private int runArchive(Map<Path, String> files) {
+        final Path archive = Paths.get(inputs.get(0));
+        if (!force && Files.exists(archive)) {
+            log.println("huffman: " + archive + " already exists, use --force to overwrite.");
+            return EXIT_FAILED;
+        }
+        final Map<String, Path> entries = new LinkedHashMap<>();
+        for (var file : files.entrySet()) {
+            if (file.getKey().toAbsolutePath().normalize().equals(archive.toAbsolutePath().normalize())) {
+                continue;
+            }
+            final Path previous = entries.put(file.getValue(), file.getKey());
+            if (previous != null) {
+                log.println("huffman: " + file.getKey() + " and " + previous + " would both be stored as " + file.getValue() + ".");
+                return EXIT_USAGE;
+            }
+        }
+        final long start = System.nanoTime();
+        long input = 0;
+        try {
+            HuffmanArchive.create(archive, entries, shared, maxCodeLength, new CodecContext.Pool(jobs), new Progress());
+            for (Path file : entries.values()) {
+                input += Files.size(file);
+            }
+            printSummary(entries.size() + unmatched, unmatched, input, Files.size(archive), System.nanoTime() - start);
+        } catch (IOException | RuntimeException e) {
+            log.println("huffman: " + archive + ": " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+            try {
+                Files.deleteIfExists(archive);
+            } catch (IOException ignored) {
+
+            }
+            return EXIT_FAILED;
+        }
+        return unmatched == 0 ? EXIT_OK : EXIT_FAILED;
+    }
+
+    private int runExtract() {
+        final Path source = Paths.get(inputs.get(0));
+        final Path directory = outputDirectory == null ? Paths.get("") : outputDirectory;
+        final long start = System.nanoTime();
+        try (HuffmanArchive archive = new HuffmanArchive(source, new CodecContext.Pool(jobs))) {
+            final List<String> names = inputs.subList(1, inputs.size());
+            if (command == Command.LIST) {
+                for (var entry : archive.getEntries()) {
+                    if (names.isEmpty() || names.contains(entry.getName())) {
+                        System.out.println(entry.getSize() + "\t" + entry.getCompressedSize() + "\t" + entry.getName());
+                    }
+                }
+                return EXIT_OK;
+            }
+            long output = 0;
+            int failed = 0;
+            if (names.isEmpty()) {
+                archive.extractAll(directory.toAbsolutePath(), new Progress());
+                for (var entry : archive.getEntries()) {
+                    output += entry.getSize();
+                }
+            }
+            for (String name : names) {
+                final HuffmanArchive.Entry entry = archive.getEntry(name);
+                if (entry == null) {
+                    log.println("huffman: " + source + ": no entry named " + name + ".");
+                    ++failed;
+                    continue;
+                }
+                final Path destination = directory.resolve(Paths.get(name).getFileName());
+                if (!force && Files.exists(destination)) {
+                    log.println("huffman: " + destination + " already exists, use --force to overwrite.");
+                    ++failed;
+                    continue;
+                }
+                archive.extract(name, destination);
+                output += entry.getSize();
+            }
+            final int count = names.isEmpty() ? archive.getEntries().size() : names.size();
+            printSummary(count, failed, Files.size(source), output, System.nanoTime() - start);
+            return failed == 0 ? EXIT_OK : EXIT_FAILED;
+        } catch (IOException | RuntimeException e) {
+            log.println("huffman: " + source + ": " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+            return EXIT_FAILED;
+        }
+    }
+
+    private int runTrain(List<Path> files) {
+        final Path destination = Paths.get(inputs.get(0));
+        if (!force && Files.exists(destination)) {
+            log.println("huffman: " + destination + " already exists, use --force to overwrite.");
+            return EXIT_FAILED;
+        }
+        final long start = System.nanoTime();
+        try {
+            long input = 0;
+            for (Path file : files) {
+                input += Files.size(file);
+            }
+            final HuffmanDictionary trained = HuffmanDictionary.train(files, maxCodeLength, new CodecContext(), new Progress());
+            trained.write(destination);
+            log.printf("Trained dictionary %s from %d file(s), %d failed, %d bytes in %.2f s%n", trained.getName(), files.size(), unmatched, input, Math.max(System.nanoTime() - start, 1) / 1e9);
+        } catch (IOException | RuntimeException e) {
+            log.println("huffman: " + destination + ": " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+            return EXIT_FAILED;
+        }
+        return unmatched == 0 ? EXIT_OK : EXIT_FAILED;
+    }
+
+    private int runFiles(List<Path> files) {
+        for (Path file : dictionaryFiles) {
+            try {
+                dictionary = HuffmanDictionary.Registry.SHARED.load(file);
+            } catch (IOException | RuntimeException e) {
+                log.println("huffman: " + file + ": " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+                return EXIT_FAILED;
+            }
+        }
+        final ExecutorService workers = Executors.newFixedThreadPool(Math.min(jobs, files.size()));
+        final CodecContext.Pool contexts = new CodecContext.Pool(jobs + Runtime.getRuntime().availableProcessors());
+        if (cacheFile != null && !decode) {
+            cache = new HistogramCache(cacheSize > 0 ? cacheSize : Math.max(HistogramCache.DEFAULT_CAPACITY, files.size()), cacheVerify, cacheFile);
+        }
+        final List<Future<Result>> pending = new ArrayList<>();
+        final long start = System.nanoTime();
+        for (Path file : files) {
+            pending.add(workers.submit(() -> process(file, contexts)));
+        }
+
+        long input = 0;
+        long output = 0;
+        int failed = unmatched;
+        for (int i = 0; i < pending.size(); ++i) {
+            Result result;
+            try {
+                result = pending.get(i).get();
+            } catch (ExecutionException ee) {
+                result = new Result(0, 0, String.valueOf(ee.getCause().getMessage()));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                result = new Result(0, 0, "interrupted.");
+            }
+            if (result.error != null) {
+                ++failed;
+                log.println("huffman: " + files.get(i) + ": " + result.error);
+                continue;
+            }
+            input += result.input;
+            output += result.output;
+            if (!quiet) {
+                log.println(files.get(i) + ": " + result.input + " -> " + result.output + " bytes");
+            }
+        }
+        workers.shutdown();
+        if (cache != null) {
+            try {
+                cache.save();
+            } catch (HuffmanCoding.HuffmanException e) {
+                log.println("huffman: " + cacheFile + ": " + e.getMessage());
+            }
+        }
+        printSummary(files.size() + unmatched, failed, input, output, System.nanoTime() - start);
+        return failed == 0 ? EXIT_OK : EXIT_FAILED;
+    }
+
+    private Result process(Path file, CodecContext.Pool contexts) {
+        final Path destination = destinationOf(file);
+        if (!force && Files.exists(destination)) {
+            return new Result(0, 0, destination + " already exists, use --force to overwrite.");
+        }
+        final HuffmanCoding coding = new HuffmanCoding(contexts);
+        try {
+            coding.setMemoryMapped(mapped);
+            coding.setMaxCodeLength(maxCodeLength);
+            if (!decode) {
+                coding.setAdaptive(adaptive);
+                coding.setBlockSize(blockSize);
+                coding.setHeaderFormat(legacy ? HuffmanCoding.HeaderFormat.V1 : HuffmanCoding.HeaderFormat.V2);
+                coding.setSeekInterval(seekInterval);
+                coding.setChecksum(checksum);
+                coding.setContextTables(contextTables);
+                coding.setSymbolWidth(symbolWidth);
+                coding.setSampleFraction(sampleFraction);
+                coding.setCache(cache);
+                coding.setDictionary(dictionary);
+            }
+            final ProgressableTask task = decode ? coding.getDecoder(file.toString(), destination.toString()) : coding.getEncoder(file.toString(), destination.toString());
+            try {
+                final Progress progress = new Progress();
+                for (var phase : task.getPhases()) {
+                    phase.run(progress);
+                }
+            } finally {
+                task.cleanup();
+            }
+            return new Result(Files.size(file), Files.size(destination), null);
+        } catch (Exception e) {
+            try {
+                Files.deleteIfExists(destination);
+            } catch (IOException ignored) {
+
+            }
+            return new Result(0, 0, e.getMessage() == null ? e.toString() : e.getMessage());
+        }
+    }
+
+    private Path destinationOf(Path file) {
+        final String name = file.getFileName().toString();
+        final String target;
+        if (decode) {
+            target = name.endsWith(EXTENSION) && name.length() > EXTENSION.length() ? name.substring(0, name.length() - EXTENSION.length()) : name + ".out";
+        }
+        else {
+            target = name + EXTENSION;
+        }
+        return outputDirectory == null ? file.resolveSibling(target) : outputDirectory.resolve(target);
+    }
+
+    private int runRange() {
+        final Path source = Paths.get(inputs.get(0));
+        final long offset;
+        final long length;
+        try {
+            offset = Long.parseLong(inputs.get(1));
+            length = Long.parseLong(inputs.get(2));
+        } catch (NumberFormatException nfe) {
+            log.println("huffman: range offset and length must be numbers.");
+            return EXIT_USAGE;
+        }
+        try (HuffmanRangeDecoder decoder = new HuffmanRangeDecoder(source)) {
+            final OutputStream stdout = new BufferedOutputStream(System.out, CodecContext.INPUT_BYTES);
+            decoder.decode(offset, length, stdout);
+            stdout.flush();
+        } catch (IOException | RuntimeException e) {
+            log.println("huffman: " + source + ": " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+            return EXIT_FAILED;
+        }
+        return EXIT_OK;
+    }
+
+    private int runStandardStreams() {
+        final long start = System.nanoTime();
+        long input = 0;
+        long output = 0;
+        try {
+            final InputStream stdin = new BufferedInputStream(System.in, CodecContext.INPUT_BYTES);
+            final OutputStream stdout = new BufferedOutputStream(System.out, CodecContext.INPUT_BYTES);
+            if (decode) {
+                final HuffmanInputStream decoder = new HuffmanInputStream(stdin);
+                output = decoder.transferTo(stdout);
+                input = decoder.getBytesRead();
+                stdout.flush();
+            }
+            else {
+                final CountingOutputStream counted = new CountingOutputStream(stdout);
+                final int size = blockSize == 0 ? HuffmanOutputStream.DEFAULT_BLOCK_SIZE : blockSize;
+                try (HuffmanOutputStream encoder = new HuffmanOutputStream(counted, size, maxCodeLength)) {
+                    input = stdin.transferTo(encoder);
+                    encoder.finish();
+                }
+                output = counted.count;
+            }
+        } catch (IOException | HuffmanCoding.HuffmanException e) {
+            log.println("huffman: -: " + e.getMessage());
+            return EXIT_FAILED;
+        }
+        printSummary(1, 0, input, output, System.nanoTime() - start);
+        return EXIT_OK;
+    }
+
+    private void printSummary(int files, int failed, long input, long output, long nanos) {
+        final double seconds = Math.max(nanos, 1) / 1e9;
+        final double ratio = input == 0 ? 0 : 100. * output / input;
+        log.printf("%s %d file(s), %d failed: %d -> %d bytes (%.1f%%) in %.2f s, %.1f MB/s%n",
+            decode || command == Command.EXTRACT ? "Decoded" : "Encoded", files - failed, failed, input, output, ratio, seconds, input / 1e6 / seconds);
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        public CountingOutputStream(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            out.write(value);
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            out.write(data, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
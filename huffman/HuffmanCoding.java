@@ -1,28 +1,99 @@
 package huffman;
 
 import java.io.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
 
 public class HuffmanCoding {
-    public static final byte[] INPUT_BUFFER = new byte[65536];
     public static final short SIGNATURE = 7006;
+    public static final short SIGNATURE_VERSIONED = 7007;
+    public static final int VERSION = 2;
+    public static final int VERSION_MODELED = 3;
+    public static final int ORDER_1 = 1;
+    public static final int WIDE_SYMBOLS = 2;
+    public static final int DICTIONARY = 3;
+    public static final int DEFAULT_MAX_LENGTH = 32;
+    public static final int FLAG_CHECKSUM = 0x40;
+    public static final int FLAG_STORED = 0x80;
+    public static final int WIDE_ALPHABET = 1 << Short.SIZE;
+    private static final int CHECKSUM_TRAILER_BYTES = 2 * Integer.BYTES;
+    private static final long COUNT_SEGMENT_BYTES = 8 << 20;
 
+    public enum HeaderFormat {
+        V1,
+        V2
+    }
+
+    public enum DecodeStrategy {
+        TREE_WALK,
+        TABLE
+    }
+
+    private final CodecContext.Pool pool;
     private TableCounter counter = new TableCounter(256);
     private HuffmanTree tree = new HuffmanTree();
     private Table<String> encoding = null;
+    private CodeTable codes = null;
+    private DecodeStrategy decodeStrategy = DecodeStrategy.TABLE;
+    private HeaderFormat format = HeaderFormat.V2;
+    private int maxCodeLength = DEFAULT_MAX_LENGTH;
+    private long optimalSize = 0;
+    private boolean memoryMapped = false;
+    private boolean adaptive = false;
+    private int blockSize = 0;
+    private boolean sharedTable = false;
+    private BlockContainer blocks = null;
+    private int streamBlockSize = 0;
+    private int streamFlags = 0;
+    private int seekInterval = 0;
+    private boolean indexed = false;
+    private SeekIndex seekIndex = null;
+    private boolean checksum = true;
+    private boolean checked = false;
+    private boolean stored = false;
+    private long originalLength = -1;
+    private int originalChecksum = 0;
+    private int contextTables = 0;
+    private boolean contextual = false;
+    private ContextModel contextModel = null;
+    private int symbolWidth = Byte.SIZE;
+    private boolean wide = false;
+    private double sampleFraction = 1;
+    private FrequencySampler sampler = null;
+    private HistogramCache cache = null;
+    private HistogramCache.Entry cached = null;
+    private HistogramCache.Key cachedKey = null;
+    private boolean cacheHit = false;
+    private HuffmanDictionary dictionary = null;
+    private HuffmanDictionary.Registry dictionaries = HuffmanDictionary.Registry.SHARED;
+    private HuffmanDictionary codedDictionary = null;
+    private CodecMetrics metrics = CodecMetrics.SHARED;
 
     public class Encode extends ProgressableTask {
         private final TaskPhase[] phases = new TaskPhase[] {
-            new TaskPhase("Counting character occurrences...", 0., this::count),
-            new TaskPhase("Building huffman tree...", 0.45, this::createTree),
-            new TaskPhase("Encoding characters...", 0.5, this::createEncodings),
-            new TaskPhase("Writing to destination...", .7, this::encodeSource),
-            new TaskPhase("Finished encoding file...", 1., (AtomicReference<Double> ignored) -> {
+            new TaskPhase("Counting character occurrences...", 0., timed(CodecMetrics.Phase.COUNT, this::count)),
+            new TaskPhase("Building huffman tree...", 0.45, timed(CodecMetrics.Phase.TREE, this::createTree)),
+            new TaskPhase("Encoding characters...", 0.5, timed(CodecMetrics.Phase.ENCODINGS, this::createEncodings)),
+            new TaskPhase("Writing to destination...", .7, timed(CodecMetrics.Phase.ENCODE, this::encodeSource)),
+            new TaskPhase("Finished encoding file...", 1., (Progress ignored) -> {
                 cleanup();
             })
         };
         private final String source;
         private final String destination;
+        private CodecContext context;
+        private boolean writing = false;
+        private boolean written = false;
 
         public Encode(String source, String destination) {
             this.source = source;
@@ -36,40 +107,152 @@ public class HuffmanCoding {
 
         @Override
         public void cleanup() {
+            pool.release(context);
+            context = null;
+            if (writing && !written) {
+                writing = false;
+                deletePartial(destination);
+            }
+        }
 
+        private RunnableTask timed(CodecMetrics.Phase phase, RunnableTask task) {
+            return progress -> {
+                final CodecMetrics.Timer timer = metrics.start(phase, source);
+                task.run(progress);
+                final boolean reading = phase == CodecMetrics.Phase.COUNT || phase == CodecMetrics.Phase.ENCODE;
+                timer.stop(reading ? new File(source).length() : 0, phase == CodecMetrics.Phase.ENCODE ? new File(destination).length() : 0);
+            };
         }
 
-        private void count(AtomicReference<Double> progress) throws IOException {
-            readCounts(source, progress);
+        private void count(Progress progress) throws IOException {
+            if (seekInterval > 0 && (adaptive || blockSize > 0 || format == HeaderFormat.V1)) {
+                throw new IllegalStateException("A seek index can only be written for single stream v2 files.");
+            }
+            if (contextTables > 0 && (adaptive || blockSize > 0 || seekInterval > 0 || format == HeaderFormat.V1)) {
+                throw new IllegalStateException("Order-1 context coding can only be used for single stream v2 files without a seek index.");
+            }
+            if (symbolWidth != Byte.SIZE && (adaptive || blockSize > 0 || seekInterval > 0 || contextTables > 0 || format == HeaderFormat.V1)) {
+                throw new IllegalStateException("Wide symbols can only be used for single stream v2 files without a seek index or context tables.");
+            }
+            if (sampleFraction < 1 && (adaptive || blockSize > 0 || contextTables > 0 || symbolWidth != Byte.SIZE || !checksum || format == HeaderFormat.V1)) {
+                throw new IllegalStateException("Sampled counts can only be used for single stream 8-bit v2 files that record their length.");
+            }
+            if (dictionary != null && (adaptive || blockSize > 0 || seekInterval > 0 || contextTables > 0 || symbolWidth != Byte.SIZE || sampleFraction < 1 || format == HeaderFormat.V1)) {
+                throw new IllegalStateException("A dictionary can only be used for single stream 8-bit v2 files without a seek index.");
+            }
+            context = pool.acquire();
+            checked = checksum && format == HeaderFormat.V2;
+            stored = false;
+            wide = symbolWidth == Short.SIZE;
+            sampler = sampleFraction < 1 ? new FrequencySampler(sampleFraction, maxCodeLength) : null;
+            cached = null;
+            cacheHit = false;
+            codedDictionary = dictionary;
+            contextModel = contextTables > 0 ? new ContextModel() : null;
+            if (adaptive) {
+                counter = new TableCounter(256);
+            }
+            else if (codedDictionary != null) {
+                counter = new TableCounter(256);
+                originalLength = new File(source).length();
+                progress.complete();
+            }
+            else if (blockSize > 0) {
+                blocks = new BlockContainer(blockSize, (sharedTable ? BlockContainer.FLAG_SHARED_TABLE : 0) | (checked ? FLAG_CHECKSUM : 0) | FLAG_STORED, maxCodeLength);
+                blocks.setMemoryMapped(memoryMapped);
+                counter = blocks.count(source, progress);
+            }
+            else if (contextModel != null) {
+                readContextCounts(context, source, progress);
+            }
+            else if (wide) {
+                readWideCounts(context, source, progress);
+            }
+            else if (sampler != null) {
+                sampleCounts(context, source, progress);
+            }
+            else {
+                readCounts(source, progress);
+            }
+            if (!wide && sampler == null && codedDictionary == null) {
+                originalLength = counter.getTotal();
+            }
         }
 
-        private void createTree(AtomicReference<Double> progress) throws IOException {
-            buildTree();
+        private void createTree(Progress progress) throws IOException {
+            if (!adaptive && codedDictionary == null) {
+                buildTree();
+            }
         }
 
-        private void createEncodings(AtomicReference<Double> progress) throws IOException {
-            buildEncodings();
+        private void createEncodings(Progress progress) throws IOException {
+            if (adaptive) {
+                encoding = new CodeTable(256).getEncodings();
+            }
+            else if (codedDictionary != null) {
+                codes = codedDictionary.getCodes();
+                encoding = codes.getEncodings();
+            }
+            else {
+                buildEncodings();
+                if (contextModel != null) {
+                    contextModel.build(contextTables, maxCodeLength);
+                }
+                stored = format == HeaderFormat.V2 && blocks == null && seekInterval == 0 && getCodedBytes() + getEstimatedLossBytes() >= getUncompressedBytes();
+                if (contextModel != null) {
+                    metrics.recordTable(source, maxLength(contextModel), contextModel.getCompressionSize(), getUncompressedBytes());
+                }
+                else {
+                    metrics.recordTable(source, codes.getMaxLength(), getCompressionSize(), counter.getTotal());
+                }
+            }
         }
 
-        private void encodeSource(AtomicReference<Double> progress) throws IOException {
-            writeToFile(source, destination, progress);
+        private void encodeSource(Progress progress) throws IOException {
+            writing = true;
+            if (adaptive) {
+                adaptiveToFile(context, source, destination, progress);
+            }
+            else if (blocks != null) {
+                blocks.encode(source, destination, codes, progress);
+            }
+            else if (codedDictionary != null) {
+                dictionaryToFile(context, source, destination, progress);
+            }
+            else if (stored) {
+                storeToFile(context, source, destination, progress);
+            }
+            else if (contextModel != null) {
+                contextToFile(context, source, destination, progress);
+            }
+            else if (wide) {
+                wideToFile(context, source, destination, progress);
+            }
+            else {
+                writeToFile(context, source, destination, progress);
+            }
+            written = true;
         }
     }
 
     public class Decode extends ProgressableTask {
         private final TaskPhase[] phases = new TaskPhase[] {
-            new TaskPhase("Open huffman file...", 0., this::openSource),
-            new TaskPhase("Verifying huffman file...", 0., this::verifySource),
-            new TaskPhase("Extracting huffman tree...", 0.1, this::extractTree),
-            new TaskPhase("Decoding file...", .7, this::decodeSource),
-            new TaskPhase("Finished decoding file...", 1., (AtomicReference<Double> ignored) -> {
+            new TaskPhase("Open huffman file...", 0., timed(CodecMetrics.Phase.OPEN, this::openSource)),
+            new TaskPhase("Verifying huffman file...", 0., timed(CodecMetrics.Phase.VERIFY, this::verifySource)),
+            new TaskPhase("Extracting huffman tree...", 0.1, timed(CodecMetrics.Phase.HEADER, this::extractTree)),
+            new TaskPhase("Decoding file...", .7, timed(CodecMetrics.Phase.DECODE, this::decodeSource)),
+            new TaskPhase("Finished decoding file...", 1., (Progress ignored) -> {
                 cleanup();
             })
         };
         private InputStream input;
+        private ChecksumInputStream checking;
         private final String source;
         private final String destination;
         private long length;
+        private CodecContext context;
+        private boolean writing = false;
+        private boolean written = false;
 
         public Decode(String source, String destination) {
             this.source = source;
@@ -91,26 +274,85 @@ public class HuffmanCoding {
                     ioe.printStackTrace();
                 }
             }
+            pool.release(context);
+            context = null;
+            if (writing && !written) {
+                writing = false;
+                deletePartial(destination);
+            }
         }
 
-        private void openSource(AtomicReference<Double> progress) throws IOException {
+        private RunnableTask timed(CodecMetrics.Phase phase, RunnableTask task) {
+            return progress -> {
+                final CodecMetrics.Timer timer = metrics.start(phase, source);
+                task.run(progress);
+                final boolean decoded = phase == CodecMetrics.Phase.DECODE;
+                timer.stop(decoded ? length : 0, decoded ? new File(destination).length() : 0);
+            };
+        }
+
+        private void openSource(Progress progress) throws IOException {
+            context = pool.acquire();
             length = new File(source).length();
-            final FileInputStream fin = new FileInputStream(source);
-            input = new BufferedInputStream(fin);
+            checking = new ChecksumInputStream(openInput(source));
+            input = checking;
         }
 
-        private void verifySource(AtomicReference<Double> progress) throws IOException {
+        private void verifySource(Progress progress) throws IOException {
             if (!validateHuffman(input)) {
-                throw new VisualHuffmanDecoding.InvalidHuffman();
+                throw new HuffmanBadSignature();
             }
         }
 
-        private void extractTree(AtomicReference<Double> progress) throws IOException {
+        private void extractTree(Progress progress) throws IOException {
             extractEncodings(input);
+            final boolean trailed = checked && blocks == null && streamBlockSize == 0 && !adaptive;
+            if (!trailed) {
+                checking.ignore();
+            }
+            if (indexed || trailed) {
+                try (FileChannel channel = FileChannel.open(Path.of(source), StandardOpenOption.READ)) {
+                    if (indexed) {
+                        seekIndex = SeekIndex.read(channel, getHeaderBytes());
+                    }
+                    if (trailed) {
+                        final long end = (indexed ? seekIndex.getIndexOffset() : channel.size()) - CHECKSUM_TRAILER_BYTES;
+                        final ByteBuffer trailer = readTrailer(channel, end);
+                        checking.expect(end, trailer.getInt());
+                        originalChecksum = trailer.getInt();
+                    }
+                }
+            }
         }
 
-        private void decodeSource(AtomicReference<Double> progress) throws IOException {
-            decodeToFile(input, destination, length, progress);
+        private void decodeSource(Progress progress) throws IOException {
+            writing = true;
+            if (adaptive) {
+                adaptiveFromStream(context, input, destination, length, progress);
+            }
+            else if (blocks != null) {
+                blocks.decode(source, destination, codes, progress);
+            }
+            else if (streamBlockSize > 0) {
+                streamToFile(context, input, destination, length, progress);
+            }
+            else if (codedDictionary != null) {
+                dictionaryFromStream(context, input, destination, length, progress);
+            }
+            else if (stored) {
+                copyToFile(context, input, destination, length, progress);
+            }
+            else if (contextModel != null) {
+                contextFromStream(context, input, destination, length, progress);
+            }
+            else if (wide) {
+                wideFromStream(context, input, destination, length, progress);
+            }
+            else {
+                decodeToFile(context, input, destination, length, progress);
+            }
+            checking.finish();
+            written = true;
         }
     }
 
@@ -122,7 +364,7 @@ public class HuffmanCoding {
 
     public static class HuffmanBadSignature extends HuffmanException {
         public HuffmanBadSignature() {
-            super("Signature doesn't match huffman.");
+            super("Error reading requested file, file has an invalid signature that doesn't match huffman encoding.");
         }
     }
 
@@ -132,14 +374,236 @@ public class HuffmanCoding {
         }
     }
 
+    public static class HuffmanBadChecksum extends HuffmanException {
+        public HuffmanBadChecksum(String what) {
+            super(what + " failed its CRC32C integrity check, the file is corrupt.");
+        }
+    }
+
+    public static class HuffmanCodeLength extends HuffmanException {
+        public HuffmanCodeLength(int length) {
+            super("Huffman tree produced a code of " + length + " bits, longer than the supported " + BitWriter.MAX_LENGTH + " bits.");
+        }
+    }
+
+    public static class HuffmanStaleCache extends HuffmanException {
+        public HuffmanStaleCache(String source) {
+            super("Source file " + source + " changed after its counts were cached, encode it again.");
+        }
+    }
+
+    public static class HuffmanCancelled extends HuffmanException {
+        public HuffmanCancelled() {
+            super("Operation was cancelled before it finished.");
+        }
+    }
+
     public static class HuffmanIOExcept extends HuffmanException {
         public HuffmanIOExcept() {
             super("Critical error occurred when processing the source/destination file.");
         }
     }
 
+    private static int maxLength(ContextModel model) {
+        int depth = 0;
+        for (int i = 0; i < model.getTableCount(); ++i) {
+            depth = Math.max(depth, model.getTable(i).getMaxLength());
+        }
+        return depth;
+    }
+
+    private static void deletePartial(String destination) {
+        try {
+            Files.deleteIfExists(Path.of(destination));
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
     public HuffmanCoding() {
+        this(CodecContext.Pool.SHARED);
+    }
+
+    public HuffmanCoding(CodecContext.Pool pool) {
+        this.pool = pool;
+    }
+
+    public DecodeStrategy getDecodeStrategy() {
+        return decodeStrategy;
+    }
+
+    public void setDecodeStrategy(DecodeStrategy decodeStrategy) {
+        this.decodeStrategy = decodeStrategy;
+    }
+
+    public HeaderFormat getHeaderFormat() {
+        return format;
+    }
+
+    public void setHeaderFormat(HeaderFormat format) {
+        this.format = format;
+    }
+
+    public int getMaxCodeLength() {
+        return maxCodeLength;
+    }
+
+    public void setMaxCodeLength(int maxCodeLength) {
+        if (maxCodeLength < 1 || maxCodeLength > BitWriter.MAX_LENGTH) {
+            throw new IllegalArgumentException("Maximum code length must be between 1 and " + BitWriter.MAX_LENGTH + " bits.");
+        }
+        this.maxCodeLength = maxCodeLength;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public int getContextTables() {
+        return contextTables;
+    }
+
+    public void setContextTables(int contextTables) {
+        if (contextTables < 0 || contextTables > ContextModel.MAX_TABLES) {
+            throw new IllegalArgumentException("Context tables must be 0 or between 1 and " + ContextModel.MAX_TABLES + ".");
+        }
+        this.contextTables = contextTables;
+    }
+
+    public ContextModel getContextModel() {
+        return contextModel;
+    }
+
+    public int getSymbolWidth() {
+        return symbolWidth;
+    }
+
+    public void setSymbolWidth(int symbolWidth) {
+        if (symbolWidth != Byte.SIZE && symbolWidth != Short.SIZE) {
+            throw new IllegalArgumentException("Symbol width must be " + Byte.SIZE + " or " + Short.SIZE + " bits.");
+        }
+        this.symbolWidth = symbolWidth;
+    }
+
+    public boolean isWide() {
+        return wide;
+    }
+
+    public HistogramCache getCache() {
+        return cache;
+    }
+
+    public void setCache(HistogramCache cache) {
+        this.cache = cache;
+    }
+
+    public HuffmanDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public void setDictionary(HuffmanDictionary dictionary) {
+        this.dictionary = dictionary;
+        if (dictionary != null) {
+            dictionaries.register(dictionary);
+        }
+    }
+
+    public HuffmanDictionary.Registry getDictionaries() {
+        return dictionaries;
+    }
+
+    public void setDictionaries(HuffmanDictionary.Registry dictionaries) {
+        this.dictionaries = dictionaries;
+    }
+
+    public boolean isDictionaryCoded() {
+        return codedDictionary != null;
+    }
+
+    public CodecMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(CodecMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public double getSampleFraction() {
+        return sampleFraction;
+    }
+
+    public void setSampleFraction(double sampleFraction) {
+        if (!(sampleFraction >= FrequencySampler.MIN_FRACTION && sampleFraction <= 1)) {
+            throw new IllegalArgumentException("Sample fraction must be between " + FrequencySampler.MIN_FRACTION + " and 1.");
+        }
+        this.sampleFraction = sampleFraction;
+    }
+
+    public boolean isSampled() {
+        return sampler != null && sampler.isSampled();
+    }
+
+    public long getEstimatedLossBytes() {
+        return sampler == null ? 0 : (sampler.getEstimatedLossBits() + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    public double getEstimatedRatioLoss() {
+        final long uncompressed = getUncompressedBytes();
+        return uncompressed == 0 ? 0 : (double)getEstimatedLossBytes() / uncompressed;
+    }
+
+    public boolean isStored() {
+        return stored;
+    }
 
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        if (blockSize != 0 && (blockSize < BlockContainer.MIN_BLOCK_SIZE || blockSize > BlockContainer.MAX_BLOCK_SIZE)) {
+            throw new IllegalArgumentException("Block size must be 0 or between " + BlockContainer.MIN_BLOCK_SIZE + " and " + BlockContainer.MAX_BLOCK_SIZE + " bytes.");
+        }
+        this.blockSize = blockSize;
+    }
+
+    public int getSeekInterval() {
+        return seekInterval;
+    }
+
+    public void setSeekInterval(int seekInterval) {
+        if (seekInterval != 0 && (seekInterval < SeekIndex.MIN_INTERVAL || seekInterval > SeekIndex.MAX_INTERVAL)) {
+            throw new IllegalArgumentException("Seek interval must be 0 or between " + SeekIndex.MIN_INTERVAL + " and " + SeekIndex.MAX_INTERVAL + " bytes.");
+        }
+        this.seekInterval = seekInterval;
+    }
+
+    public boolean isChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(boolean checksum) {
+        this.checksum = checksum;
+    }
+
+    public boolean isSharedTable() {
+        return sharedTable;
+    }
+
+    public void setSharedTable(boolean sharedTable) {
+        this.sharedTable = sharedTable;
     }
 
     public Encode getEncoder(String source, String destination) {
@@ -151,94 +615,281 @@ public class HuffmanCoding {
     }
 
     public long getUncompressedBytes() {
-        long size = 0;
-        for (var entry : counter) {
-            if (entry.value > 0) {
-                size += entry.value;
-            }
-        }
-        return size;
+        return wide || sampler != null || codedDictionary != null ? originalLength : counter.getTotal();
     }
 
     public long getCompressionSize() {
-        long size = 0;
-        for (var entry : counter) {
-            if (entry.value > 0) {
-                size += entry.value * encoding.get(entry.index).length();
-            }
-        }
-        return size;
+        return codes.getCompressionSize(counter);
+    }
+
+    public long getOptimalCompressionSize() {
+        return optimalSize;
+    }
+
+    public long getLengthLimitCost() {
+        return getCompressionSize() - optimalSize;
     }
 
     public long getHeaderBytes() {
-        return Short.BYTES + (tree.toString().length() + Byte.SIZE - 1) / Byte.SIZE + 2;
+        if (format == HeaderFormat.V1) {
+            return Short.BYTES + (tree.getHeaderBits() + Byte.SIZE - 1) / Byte.SIZE + 2;
+        }
+        final long length = checked ? BitWriter.varIntBytes(originalLength) : 0;
+        if (stored) {
+            return Short.BYTES + 2 + length;
+        }
+        if (contextModel != null) {
+            return Short.BYTES + 3 + BitWriter.varIntBytes(originalLength) + contextModel.getHeaderBytes();
+        }
+        if (wide) {
+            return Short.BYTES + 3 + BitWriter.varIntBytes(originalLength) + codes.getLengthTableBytes();
+        }
+        if (codedDictionary != null) {
+            return Short.BYTES + 3 + Integer.BYTES + BitWriter.varIntBytes(originalLength);
+        }
+        return Short.BYTES + 3 + length + codes.getLengthTableBytes();
     }
 
     public long getTotalCompressionBytes() {
+        if (blocks != null) {
+            return blocks.getCompressedBytes(codes);
+        }
         final long header = getHeaderBytes();
-        final long translated = (getCompressionSize() + Byte.SIZE - 1) / Byte.SIZE;
+        if (codedDictionary != null) {
+            final long trailer = checked ? CHECKSUM_TRAILER_BYTES : 0;
+            return getHeaderBytes() + (getCompressionSize() + Byte.SIZE - 1) / Byte.SIZE + trailer;
+        }
+        final long bits = contextModel != null ? contextModel.getCompressionSize() : getCompressionSize();
+        final long translated = stored ? getUncompressedBytes() : (bits + Byte.SIZE - 1) / Byte.SIZE;
+        final long index = seekInterval > 0 ? SeekIndex.getIndexBytes(getUncompressedBytes(), seekInterval) : 0;
+        final long trailer = checked ? CHECKSUM_TRAILER_BYTES : 0;
+
+        return header + translated + trailer + index;
+    }
 
-        return header + translated;
+    private long getCodedBytes() {
+        if (contextModel != null) {
+            return contextModel.getHeaderBytes() + (contextModel.getCompressionSize() + Byte.SIZE - 1) / Byte.SIZE;
+        }
+        return codes.getLengthTableBytes() + (getCompressionSize() + Byte.SIZE - 1) / Byte.SIZE;
     }
 
     public Table<String> getEncodings() {
         return encoding;
     }
 
+    public CodeTable getCodeTable() {
+        return codes;
+    }
+
     public TableCounter getCounter() {
         return counter;
     }
 
     private void buildTree() {
-        tree.initialize(counter);
+        if (cachedCodes() != null) {
+            optimalSize = cached.getOptimalSize();
+            return;
+        }
+        tree.initialize(counter, maxCodeLength);
+        optimalSize = tree.getOptimalSize();
     }
 
     private void buildEncodings() {
-        encoding = tree.getEncodings();
+        final CodeTable reused = cachedCodes();
+        if (reused != null) {
+            codes = reused;
+        }
+        else {
+            codes = tree.getCodeTable();
+            if (format == HeaderFormat.V2 || blocks != null) {
+                codes = codes.canonical();
+            }
+            if (cached != null && format == HeaderFormat.V2 && blocks == null) {
+                cached.setCodes(maxCodeLength, codes, optimalSize);
+            }
+        }
+        encoding = codes.getEncodings();
+        if (blocks != null) {
+            blocks.buildTables(codes);
+        }
     }
 
-    public void readCounts(String source, AtomicReference<Double> progress) throws HuffmanIOExcept {
-        final long length = new File(source).length();
-        long total = 0;
-        FileInputStream file = null;
+    private CodeTable cachedCodes() {
+        return cached == null || format != HeaderFormat.V2 || blocks != null ? null : cached.getCodes(maxCodeLength);
+    }
+
+    public void readCounts(String source, Progress progress) throws HuffmanIOExcept {
+        cachedKey = cache == null ? null : cacheKey(source);
+        cached = cachedKey == null ? null : cache.get(cachedKey);
+        cacheHit = cached != null;
+        if (cacheHit) {
+            counter = cached.getCounts();
+            progress.complete();
+            return;
+        }
+        countFile(source, progress);
+        if (cachedKey != null) {
+            cached = cache.put(cachedKey, counter);
+        }
+    }
+
+    private HistogramCache.Key cacheKey(String source) throws HuffmanIOExcept {
+        final CodecContext context = pool.acquire();
         try {
-            file = new FileInputStream(source);
+            return cache.keyOf(Path.of(source), context);
+        } catch (IOException ioe) {
+            throw new HuffmanIOExcept();
+        } finally {
+            pool.release(context);
+        }
+    }
 
-            BufferedInputStream stream = new BufferedInputStream(file);
+    private void countFile(String source, Progress progress) throws HuffmanIOExcept {
+        try (FileChannel channel = FileChannel.open(Path.of(source), StandardOpenOption.READ)) {
+            final long length = channel.size();
+            final ForkJoinPool pool = ForkJoinPool.commonPool();
+            final int segments = (int)Math.max(1, Math.min(pool.getParallelism(), length / COUNT_SEGMENT_BYTES));
+            final long segment = (length + segments - 1) / segments;
 
             counter = new TableCounter(256);
-            while (stream.available() > 0) {
-                int read = stream.read(INPUT_BUFFER, 0, Math.min(INPUT_BUFFER.length, stream.available()));
+            progress.set(0, length);
+            if (segments == 1) {
+                counter.addAll(countSegment(channel, 0, length, progress));
+                return;
+            }
+            final List<Future<TableCounter>> pending = new ArrayList<>();
+            for (long position = 0; position < length; position += segment) {
+                final long start = position;
+                final long end = Math.min(length, position + segment);
+                pending.add(pool.submit(() -> countSegment(channel, start, end, progress)));
+            }
+            for (var future : pending) {
+                counter.addAll(future.get());
+            }
+        } catch (IOException | ExecutionException ioe) {
+            if (ioe.getCause() instanceof HuffmanException) {
+                throw (HuffmanException)ioe.getCause();
+            }
+            throw new HuffmanIOExcept();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new HuffmanIOExcept();
+        }
+    }
 
-                for (int i = 0; i < read; ++i) {
-                    counter.count(INPUT_BUFFER[i] & 0xFF);
+    private TableCounter countSegment(FileChannel channel, long start, long end, Progress progress) throws IOException {
+        final TableCounter segment = new TableCounter(256);
+        final CodecContext context = pool.acquire();
+        try {
+            final byte[] buffer = context.getInputBuffer();
+            final ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+            long position = start;
+            while (position < end) {
+                wrapper.clear().limit((int)Math.min(buffer.length, end - position));
+                final int read = channel.read(wrapper, position);
+                if (read < 0) {
+                    break;
                 }
+                segment.count(buffer, 0, read);
+                position += read;
+                progress.add(read);
+            }
+        } finally {
+            pool.release(context);
+        }
+        return segment;
+    }
+
+    private void readContextCounts(CodecContext context, String source, Progress progress) throws HuffmanIOExcept {
+        final long length = new File(source).length();
+        long total = 0;
+        counter = new TableCounter(256);
+        try (InputStream fin = openInput(source)) {
+            final byte[] buffer = context.getInputBuffer();
+            int read;
+            while ((read = fin.read(buffer, 0, buffer.length)) >= 0) {
+                counter.count(buffer, 0, read);
+                contextModel.count(buffer, 0, read);
                 total += read;
-                progress.set((double)total / length);
+                progress.set(total, length);
             }
         } catch (IOException ioe) {
             throw new HuffmanIOExcept();
-        } finally {
-            if (file != null) {
-                try {
-                    file.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+        }
+    }
+
+    private void sampleCounts(CodecContext context, String source, Progress progress) throws HuffmanIOExcept {
+        try (FileChannel channel = FileChannel.open(Path.of(source), StandardOpenOption.READ)) {
+            counter = sampler.sample(channel, context.getInputBuffer(), progress);
+            originalLength = sampler.getLength();
+        } catch (IOException ioe) {
+            throw new HuffmanIOExcept();
+        }
+    }
+
+    private void readWideCounts(CodecContext context, String source, Progress progress) throws HuffmanIOExcept {
+        final long length = new File(source).length();
+        long total = 0;
+        counter = new TableCounter(WIDE_ALPHABET);
+        try (InputStream fin = openInput(source)) {
+            final byte[] buffer = context.getInputBuffer();
+            int read;
+            while ((read = fin.readNBytes(buffer, 0, buffer.length)) > 0) {
+                counter.countWide(buffer, 0, read);
+                total += read;
+                progress.set(total, length);
             }
+        } catch (IOException ioe) {
+            throw new HuffmanIOExcept();
         }
+        originalLength = total;
     }
 
-    private boolean validateHuffman(InputStream input) throws HuffmanIOExcept {
+    private boolean validateHuffman(InputStream input) throws HuffmanIOExcept, HuffmanBadHeader {
+        adaptive = false;
+        blocks = null;
+        streamBlockSize = 0;
+        indexed = false;
+        seekIndex = null;
+        checked = false;
+        stored = false;
+        contextual = false;
+        contextModel = null;
+        wide = false;
+        sampler = null;
+        codedDictionary = null;
+        originalLength = -1;
         try {
-            input.read(INPUT_BUFFER, 0, 2);
+            final int high = input.read();
+            final int low = input.read();
+            if (high < 0 || low < 0) {
+                return false;
+            }
+            final short signature = (short) ((high << 8) | low);
+            if (signature == SIGNATURE) {
+                format = HeaderFormat.V1;
+                return true;
+            }
+            if (signature == SIGNATURE_VERSIONED) {
+                final int version = input.read();
+                if (version != VERSION && version != VERSION_MODELED) {
+                    throw new HuffmanBadHeader("Huffman file uses an unsupported format version(" + version + ").");
+                }
+                contextual = version == VERSION_MODELED;
+                format = HeaderFormat.V2;
+                return true;
+            }
         } catch (IOException ioe) {
             throw new HuffmanIOExcept();
         }
-        return SIGNATURE == (short) (((INPUT_BUFFER[0] & 0xFF) << 8) | (INPUT_BUFFER[1] & 0xFF));
+        return false;
     }
 
     private boolean extractEncodings(InputStream input) throws HuffmanIOExcept, HuffmanBadHeader {
+        if (format == HeaderFormat.V2) {
+            return extractLengths(input);
+        }
         final int MINIMUM_REMAINING = 1;
         final int leafs;
         try {
@@ -255,32 +906,366 @@ public class HuffmanCoding {
             throw new HuffmanIOExcept();
         }
         encoding = tree.getEncodings();
+        codes = tree.getCodeTable();
+
+        return true;
+    }
+
+    private boolean extractLengths(InputStream input) throws HuffmanIOExcept, HuffmanBadHeader {
+        try {
+            final int header = input.read();
+            final int known = BlockContainer.FLAG_BLOCKS | BlockContainer.FLAG_SHARED_TABLE | AdaptiveHuffman.FLAG_ADAPTIVE | HuffmanOutputStream.FLAG_STREAM | SeekIndex.FLAG_SEEK_INDEX | FLAG_CHECKSUM | FLAG_STORED;
+            if (header < 0 || (header & ~known) != 0) {
+                throw new HuffmanBadHeader("Source file is not a valid Huffman encoding, its header is truncated or has unknown flags.");
+            }
+            checked = (header & FLAG_CHECKSUM) != 0;
+            if (contextual) {
+                final int model = input.read();
+                if ((header & ~FLAG_CHECKSUM) != 0 || (model != ORDER_1 && model != WIDE_SYMBOLS && model != DICTIONARY)) {
+                    throw new HuffmanBadHeader("Source file is not a valid Huffman encoding, it uses an unknown context model.");
+                }
+                if (model == DICTIONARY) {
+                    final byte[] id = input.readNBytes(Integer.BYTES);
+                    if (id.length != Integer.BYTES) {
+                        throw new HuffmanBadHeader("Source file is not a valid Huffman encoding, its dictionary id is truncated.");
+                    }
+                    codedDictionary = dictionaries.get(ByteBuffer.wrap(id).getInt());
+                    originalLength = BitReader.readVarInt(input);
+                    codes = codedDictionary.getCodes();
+                    encoding = codes.getEncodings();
+                    return true;
+                }
+                originalLength = BitReader.readVarInt(input);
+                if (model == WIDE_SYMBOLS) {
+                    wide = true;
+                    codes = CodeTable.readLengths(input, WIDE_ALPHABET);
+                    encoding = codes.getEncodings();
+                    return true;
+                }
+                contextModel = ContextModel.read(input);
+                codes = new CodeTable(256);
+                encoding = codes.getEncodings();
+                return true;
+            }
+            final boolean storable = (header & FLAG_STORED) != 0;
+            final int flags = header & ~(FLAG_CHECKSUM | FLAG_STORED);
+            if ((flags & AdaptiveHuffman.FLAG_ADAPTIVE) != 0) {
+                if (flags != AdaptiveHuffman.FLAG_ADAPTIVE || storable) {
+                    throw new HuffmanBadHeader("Source file is not a valid Huffman encoding, adaptive streams cannot be split into blocks.");
+                }
+                adaptive = true;
+                counter = new TableCounter(256);
+                codes = new CodeTable(256);
+                encoding = codes.getEncodings();
+                return true;
+            }
+            if ((flags & HuffmanOutputStream.FLAG_STREAM) != 0) {
+                if (flags != HuffmanOutputStream.FLAG_STREAM) {
+                    throw new HuffmanBadHeader("Source file is not a valid Huffman encoding, streams cannot be combined with other layouts.");
+                }
+                streamFlags = header;
+                streamBlockSize = HuffmanInputStream.readBlockSize(input);
+                counter = new TableCounter(256);
+                codes = new CodeTable(256);
+                encoding = codes.getEncodings();
+                return true;
+            }
+            if ((flags & BlockContainer.FLAG_BLOCKS) != 0) {
+                final long size = BitReader.readVarInt(input);
+                if (size < BlockContainer.MIN_BLOCK_SIZE || size > BlockContainer.MAX_BLOCK_SIZE) {
+                    throw new HuffmanBadHeader("Source file has an impossible block size of " + size + " bytes.");
+                }
+                blocks = new BlockContainer((int)size, header & (BlockContainer.FLAG_SHARED_TABLE | FLAG_CHECKSUM | FLAG_STORED), maxCodeLength);
+                blocks.setMemoryMapped(memoryMapped);
+                if (!blocks.isShared()) {
+                    codes = new CodeTable(256);
+                    encoding = codes.getEncodings();
+                    return true;
+                }
+            }
+            else if (flags == SeekIndex.FLAG_SEEK_INDEX && !storable) {
+                indexed = true;
+            }
+            else if (flags == 0 && storable) {
+                stored = true;
+            }
+            else if (flags != 0) {
+                throw new HuffmanBadHeader("Source file is not a valid Huffman encoding, it combines flags that cannot be used together.");
+            }
+            if (checked && blocks == null) {
+                originalLength = BitReader.readVarInt(input);
+            }
+            if (stored) {
+                codes = new CodeTable(256);
+                encoding = codes.getEncodings();
+                return true;
+            }
+            codes = CodeTable.readLengths(input, 256);
+        }
+        catch (IOException ioe) {
+            throw new HuffmanIOExcept();
+        }
+        tree.initialize(codes);
+        encoding = codes.getEncodings();
 
         return true;
     }
 
-    private void decodeToFile(InputStream input, String pathway, long length, AtomicReference<Double> progress) throws HuffmanIOExcept {
-        FileOutputStream fout = null;
+    private static ByteBuffer readTrailer(FileChannel channel, long end) throws IOException {
+        if (end < 0) {
+            throw new HuffmanBadHeader("File is invalid, it is missing its checksum trailer.");
+        }
+        final ByteBuffer trailer = ByteBuffer.allocate(CHECKSUM_TRAILER_BYTES);
+        while (trailer.hasRemaining()) {
+            if (channel.read(trailer, end + trailer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return trailer.flip();
+    }
+
+    private InputStream openInput(String source) throws IOException {
+        if (memoryMapped) {
+            return new MappedInputStream(source);
+        }
+        return new BufferedInputStream(new FileInputStream(source));
+    }
+
+    private OutputStream openOutput(String destination, long expected) throws IOException {
+        if (memoryMapped) {
+            return new MappedOutputStream(destination, expected);
+        }
+        return new FileOutputStream(destination);
+    }
+
+    private void adaptiveFromStream(CodecContext context, InputStream input, String pathway, long length, Progress progress) throws HuffmanIOExcept, HuffmanBadHeader {
+        try (OutputStream fout = openOutput(pathway, 0)) {
+            final AdaptiveHuffman model = new AdaptiveHuffman();
+            final BitReader reader = context.createReader(input);
+            final byte[] outBuffer = context.getOutputBuffer();
+            final CRC32C crc = new CRC32C();
+            int slot = 0;
+            int symbol;
+            while ((symbol = model.decode(reader)) >= 0) {
+                outBuffer[slot++] = (byte)symbol;
+                if (slot == outBuffer.length) {
+                    counter.count(outBuffer, 0, slot);
+                    crc.update(outBuffer, 0, slot);
+                    fout.write(outBuffer, 0, slot);
+                    slot = 0;
+                    progress.set(reader.getBytesRead(), length);
+                }
+            }
+            counter.count(outBuffer, 0, slot);
+            crc.update(outBuffer, 0, slot);
+            fout.write(outBuffer, 0, slot);
+            if (checked) {
+                reader.align();
+                reader.refill();
+                if (reader.available() < Integer.SIZE || reader.read(Integer.SIZE) != (int)crc.getValue()) {
+                    throw new HuffmanBadChecksum("Adaptive stream");
+                }
+            }
+        } catch (IOException ioe) {
+            throw new HuffmanIOExcept();
+        }
+    }
+
+    private void streamToFile(CodecContext context, InputStream input, String pathway, long length, Progress progress) throws HuffmanIOExcept, HuffmanBadHeader {
+        try (OutputStream fout = openOutput(pathway, 0)) {
+            final HuffmanInputStream stream = new HuffmanInputStream(input, streamFlags, streamBlockSize);
+            final byte[] outBuffer = context.getOutputBuffer();
+            int read;
+            while ((read = stream.read(outBuffer, 0, outBuffer.length)) >= 0) {
+                counter.count(outBuffer, 0, read);
+                fout.write(outBuffer, 0, read);
+                progress.set(stream.getBytesRead(), length);
+            }
+        } catch (IOException ioe) {
+            throw new HuffmanIOExcept();
+        }
+    }
+
+    private void copyToFile(CodecContext context, InputStream input, String pathway, long length, Progress progress) throws HuffmanIOExcept, HuffmanBadHeader {
+        try (OutputStream fout = openOutput(pathway, Math.max(0, originalLength))) {
+            final byte[] outBuffer = context.getOutputBuffer();
+            final CRC32C crc = new CRC32C();
+            long remaining = checked ? originalLength : Long.MAX_VALUE;
+            long total = getHeaderBytes();
+            int read;
+            while (remaining > 0 && (read = input.read(outBuffer, 0, (int)Math.min(outBuffer.length, remaining))) >= 0) {
+                crc.update(outBuffer, 0, read);
+                fout.write(outBuffer, 0, read);
+                remaining -= read;
+                total += read;
+                progress.set(total, length);
+            }
+            if (checked && remaining > 0) {
+                throw new HuffmanBadHeader("File is invalid, its data ends " + remaining + " bytes before its recorded length.");
+            }
+            if (checked && (int)crc.getValue() != originalChecksum) {
+                throw new HuffmanBadChecksum("Decoded data");
+            }
+        } catch (IOException ioe) {
+            throw new HuffmanIOExcept();
+        }
+    }
+
+    private void contextFromStream(CodecContext context, InputStream input, String pathway, long length, Progress progress) throws HuffmanIOExcept, HuffmanBadHeader {
+        try (OutputStream fout = openOutput(pathway, originalLength)) {
+            final BitReader reader = context.createReader(input);
+            final byte[] outBuffer = context.getOutputBuffer();
+            final CRC32C crc = new CRC32C();
+            final long header = getHeaderBytes();
+            long remaining = originalLength;
+            contextModel.reset();
+            while (remaining > 0) {
+                final int slot = contextModel.decode(reader, outBuffer, 0, (int)Math.min(outBuffer.length, remaining));
+                crc.update(outBuffer, 0, slot);
+                fout.write(outBuffer, 0, slot);
+                remaining -= slot;
+                progress.set(header + reader.getBytesRead(), length);
+            }
+            if (checked && (int)crc.getValue() != originalChecksum) {
+                throw new HuffmanBadChecksum("Decoded data");
+            }
+        } catch (IOException ioe) {
+            throw new HuffmanIOExcept();
+        }
+    }
+
+    private void wideFromStream(CodecContext context, InputStream input, String pathway, long length, Progress progress) throws HuffmanIOExcept, HuffmanBadHeader {
+        try (OutputStream fout = openOutput(pathway, originalLength)) {
+            final DecodeTable table = new DecodeTable(codes);
+            final BitReader reader = context.createReader(input);
+            final byte[] outBuffer = context.getOutputBuffer();
+            final CRC32C crc = new CRC32C();
+            final long header = getHeaderBytes();
+            long remaining = originalLength;
+            if (remaining > 0 && codes.getSymbolCount() == 0) {
+                throw new HuffmanBadHeader("Huffman header has no codes for its data.");
+            }
+            while (remaining > 0) {
+                final int slot = table.decodeWide(reader, outBuffer, 0, (int)Math.min(outBuffer.length, remaining));
+                if (reader.isExhausted() && reader.available() < 0) {
+                    throw new HuffmanBadHeader("Huffman data ends before the length recorded in its header.");
+                }
+                crc.update(outBuffer, 0, slot);
+                fout.write(outBuffer, 0, slot);
+                remaining -= slot;
+                progress.set(header + reader.getBytesRead(), length);
+            }
+            if (checked && (int)crc.getValue() != originalChecksum) {
+                throw new HuffmanBadChecksum("Decoded data");
+            }
+        } catch (IOException ioe) {
+            throw new HuffmanIOExcept();
+        }
+    }
+
+    private void dictionaryFromStream(CodecContext context, InputStream input, String pathway, long length, Progress progress) throws HuffmanIOExcept, HuffmanBadHeader {
+        try (OutputStream fout = openOutput(pathway, originalLength)) {
+            final DecodeTable table = codedDictionary.getDecodeTable();
+            final BitReader reader = context.createReader(input);
+            final byte[] outBuffer = context.getOutputBuffer();
+            final CRC32C crc = new CRC32C();
+            final long header = getHeaderBytes();
+            long remaining = originalLength;
+            while (remaining > 0) {
+                final int slot = table.decode(reader, 0, outBuffer, 0, (int)Math.min(outBuffer.length, remaining));
+                if (slot == 0) {
+                    throw new HuffmanBadHeader("Huffman data ends before the length recorded in its header.");
+                }
+                crc.update(outBuffer, 0, slot);
+                fout.write(outBuffer, 0, slot);
+                remaining -= slot;
+                progress.set(header + reader.getBytesRead(), length);
+            }
+            if (checked && (int)crc.getValue() != originalChecksum) {
+                throw new HuffmanBadChecksum("Decoded data");
+            }
+        } catch (IOException ioe) {
+            throw new HuffmanIOExcept();
+        }
+    }
+
+    private void decodeToFile(CodecContext context, InputStream input, String pathway, long length, Progress progress) throws HuffmanIOExcept {
+        if (decodeStrategy == DecodeStrategy.TREE_WALK && seekIndex == null) {
+            walkToFile(context, input, pathway, length, progress);
+        }
+        else {
+            lookupToFile(context, input, pathway, length, progress);
+        }
+    }
+
+    private void lookupToFile(CodecContext context, InputStream input, String pathway, long length, Progress progress) throws HuffmanIOExcept {
+        OutputStream fout = null;
+        final long header = getHeaderBytes();
+        try {
+            fout = openOutput(pathway, Math.max(0, originalLength));
+
+            final byte[] outBuffer = context.getOutputBuffer();
+            final int paddedBit = input.read();
+
+            if (paddedBit < 0 || paddedBit > 8) {
+                throw new HuffmanBadHeader("File is invalid, has impossible amount of padding.");
+            }
+            final int trailing = paddedBit == Byte.SIZE ? 0 : paddedBit;
+            final DecodeTable table = new DecodeTable(codes);
+            final BitReader reader = context.createReader(input);
+            final CRC32C crc = new CRC32C();
+            long remaining = checked ? originalLength : seekIndex == null ? Long.MAX_VALUE : seekIndex.getLength();
+            int slot;
+            while (remaining > 0 && (slot = table.decode(reader, checked ? 0 : trailing, outBuffer, 0, (int)Math.min(outBuffer.length, remaining))) > 0) {
+                crc.update(outBuffer, 0, slot);
+                fout.write(outBuffer, 0, slot);
+                remaining -= slot;
+                progress.set(header + reader.getBytesRead(), length);
+            }
+            if ((checked || seekIndex != null) && remaining > 0) {
+                throw new HuffmanBadHeader("File is invalid, its data ends " + remaining + " bytes before its recorded length.");
+            }
+            if (checked && (int)crc.getValue() != originalChecksum) {
+                throw new HuffmanBadChecksum("Decoded data");
+            }
+            fout.flush();
+        } catch (IOException ioe) {
+            throw new HuffmanIOExcept();
+        } finally {
+            try {
+                if (fout != null) {
+                    fout.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void walkToFile(CodecContext context, InputStream input, String pathway, long length, Progress progress) throws HuffmanIOExcept {
+        OutputStream fout = null;
         long total = getHeaderBytes();
         try {
-            fout = new FileOutputStream(pathway);
+            fout = openOutput(pathway, Math.max(0, originalLength));
 
             int slot = 0;
-            final byte[] outBuffer = new byte[65536*Byte.SIZE];
+            final byte[] inBuffer = context.getInputBuffer();
+            final byte[] outBuffer = context.getOutputBuffer();
             final int paddedBit = input.read();
 
             if (paddedBit < 0 || paddedBit > 8) {
                 throw new HuffmanBadHeader("File is invalid, has impossible amount of padding.");
             }
-            final int extra = 1 << paddedBit;
+            final int extra = checked ? 0 : 1 << paddedBit;
+            final CRC32C crc = new CRC32C();
+            long remaining = checked ? originalLength : Long.MAX_VALUE;
             var node = tree.getRoot();
+            int read;
             SCANNING:
-            while (input.available() > 0) {
-                final int read = input.read(INPUT_BUFFER, 0, Math.min(INPUT_BUFFER.length, input.available()));
-                final int available = input.available();
+            while (remaining > 0 && (read = input.read(inBuffer, 0, inBuffer.length)) >= 0) {
                 for (int i = 0; i < read; ++i) {
-                    final boolean last = available == 0 && i - read == -1;
-                    int focus = INPUT_BUFFER[i] & 0xFF;
+                    final boolean last = total + i + 1 == length;
+                    int focus = inBuffer[i] & 0xFF;
                     for (int bit = 1 << 7; bit != 0; bit >>= 1) {
                         if ((focus & bit) == 0) {
                             node = node.getLeft();
@@ -292,17 +1277,28 @@ public class HuffmanCoding {
                         if (node.isCharacter()) {
                             outBuffer[slot++] = (byte)node.getCharacter();
                             node = tree.getRoot();
+                            if (--remaining == 0) {
+                                break SCANNING;
+                            }
                         }
                         if (last && extra == bit) {
-                            fout.write(outBuffer, 0, slot);
                             break SCANNING;
                         }
                     }
                 }
+                crc.update(outBuffer, 0, slot);
                 fout.write(outBuffer, 0, slot);
                 slot = 0;
                 total += read;
-                progress.set((double)total / length);
+                progress.set(total, length);
+            }
+            crc.update(outBuffer, 0, slot);
+            fout.write(outBuffer, 0, slot);
+            if (checked && remaining > 0) {
+                throw new HuffmanBadHeader("File is invalid, its data ends " + remaining + " bytes before its recorded length.");
+            }
+            if (checked && (int)crc.getValue() != originalChecksum) {
+                throw new HuffmanBadChecksum("Decoded data");
             }
             fout.flush();
         } catch (IOException ioe) {
@@ -318,80 +1314,244 @@ public class HuffmanCoding {
         }
     }
 
-    private void writeToFile(String source, String destination, AtomicReference<Double> progress) throws HuffmanIOExcept {
+    private interface ModeWriter {
+        void header(BitWriter output) throws IOException;
+
+        void encode(byte[] data, int length, BitWriter output) throws IOException;
+
+        default void finish(long total) throws IOException {
+
+        }
+
+        default void index(BitWriter output, long total) throws IOException {
+
+        }
+    }
+
+    private void encodeToFile(CodecContext context, String source, String destination, long expected, long limit, ModeWriter mode, Progress progress) throws HuffmanIOExcept {
         final long length = new File(source).length();
         long total = 0;
-        FileInputStream fin = null;
-        FileOutputStream fout = null;
-        final StringBuilder builder = new StringBuilder();
-        try {
-            fin = new FileInputStream(source);
-            fout = new FileOutputStream(destination);
-
-            BufferedInputStream input = new BufferedInputStream(fin);
-            BufferedOutputStream output = new BufferedOutputStream(fout, 65536);
-            printHeader(output, builder);
-            dumpBuilder(output, builder);
-            while (input.available() > 0) {
-                int read = input.read(INPUT_BUFFER, 0, Math.min(INPUT_BUFFER.length, input.available()));
-                for (int i = 0; i < read; ++i) {
-                    builder.append(encoding.get(INPUT_BUFFER[i] & 0xFF));
-
-                    if (builder.length() > 262144) {
-                        for (int j = 0; j < 262144; j += Byte.SIZE) {
-                            output.write(byteFromBinary(builder, j));
-                        }
-                        builder.delete(0, 262144);
-                    }
+        try (InputStream fin = openInput(source); OutputStream file = openOutput(destination, expected)) {
+            final CRC32C written = new CRC32C();
+            final CRC32C original = new CRC32C();
+            final OutputStream fout = checked ? new CheckedOutputStream(file, written) : file;
+            final byte[] inBuffer = context.getInputBuffer();
+            final BitWriter output = context.createWriter(fout);
+            mode.header(output);
+            int read;
+            while (total < limit && (read = fin.readNBytes(inBuffer, 0, (int)Math.min(inBuffer.length, limit - total))) > 0) {
+                mode.encode(inBuffer, read, output);
+                if (checked) {
+                    original.update(inBuffer, 0, read);
                 }
                 total += read;
-                progress.set((double)total / length);
+                progress.set(total, length);
             }
-            dumpBuilder(output, builder);
-            output.flush();
+            mode.finish(total);
+            if (checked) {
+                output.finish();
+                output.write(written.getValue(), Integer.SIZE);
+                output.write(original.getValue(), Integer.SIZE);
+            }
+            mode.index(output, total);
+            output.finish();
         } catch (IOException ioe) {
             throw new HuffmanIOExcept();
-        } finally {
-            try {
-                if (fin != null) {
-                    fin.close();
+        }
+    }
+
+    private void writePreamble(BitWriter output, int version, int flags) throws IOException {
+        output.write(SIGNATURE_VERSIONED, Short.SIZE);
+        output.writeByte(version);
+        output.writeByte(checked ? flags | FLAG_CHECKSUM : flags);
+    }
+
+    private void writeToFile(CodecContext context, String source, String destination, Progress progress) throws HuffmanIOExcept {
+        final long[] checkpoints = seekInterval > 0 ? new long[(int)(originalLength / seekInterval)] : null;
+        final TableCounter recount = cacheHit ? new TableCounter(256) : null;
+        encodeToFile(context, source, destination, getTotalCompressionBytes(), Long.MAX_VALUE, new ModeWriter() {
+            private long total = 0;
+            private long next = seekInterval;
+            private int marked = 0;
+
+            @Override
+            public void header(BitWriter output) throws IOException {
+                printHeader(output);
+            }
+
+            @Override
+            public void encode(byte[] data, int length, BitWriter output) throws IOException {
+                int i = 0;
+                while (i < length) {
+                    final int end = checkpoints == null ? length : (int)Math.min(length, next - total);
+                    for (; i < end; ++i) {
+                        final int symbol = data[i] & 0xFF;
+                        output.write(codes.getCode(symbol), codes.getLength(symbol));
+                    }
+                    if (checkpoints != null && total + i == next) {
+                        if (marked < checkpoints.length) {
+                            checkpoints[marked++] = output.getBitCount();
+                        }
+                        next += seekInterval;
+                    }
                 }
-                if (fout != null) {
-                    fout.close();
+                if (recount != null) {
+                    recount.count(data, 0, length);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+                total += length;
             }
-        }
+
+            @Override
+            public void finish(long total) {
+                if (recount != null && !recount.matches(counter)) {
+                    cache.remove(cachedKey);
+                    throw new HuffmanStaleCache(source);
+                }
+            }
+
+            @Override
+            public void index(BitWriter output, long total) throws IOException {
+                if (checkpoints != null) {
+                    SeekIndex.write(output, checkpoints, marked, total, seekInterval);
+                }
+            }
+        }, progress);
     }
 
-    private byte byteFromBinary(StringBuilder builder, int start) {
-        byte value = 0;
-        for (int i = 0; i != Byte.SIZE; ++i) {
-            value = (byte)(builder.charAt(start + i) == '1' ? value * 2 + 1 : value * 2);
-        }
-        return value;
+    private void storeToFile(CodecContext context, String source, String destination, Progress progress) throws HuffmanIOExcept {
+        encodeToFile(context, source, destination, getTotalCompressionBytes(), Long.MAX_VALUE, new ModeWriter() {
+            @Override
+            public void header(BitWriter output) throws IOException {
+                writePreamble(output, VERSION, FLAG_STORED);
+                if (checked) {
+                    output.writeVarInt(originalLength);
+                }
+            }
+
+            @Override
+            public void encode(byte[] data, int length, BitWriter output) throws IOException {
+                output.writeBytes(data, 0, length);
+            }
+        }, progress);
     }
 
-    private void dumpBuilder(OutputStream output, StringBuilder builder) throws IOException {
-        if (builder.length() > 0) {
-            builder.append("0".repeat(7 - (builder.length()-1) % 8));
-            for (int j = 0; j < builder.length(); j += Byte.SIZE) {
-                final byte value = byteFromBinary(builder, j);
-                output.write(value);
+    private void contextToFile(CodecContext context, String source, String destination, Progress progress) throws HuffmanIOExcept {
+        encodeToFile(context, source, destination, getTotalCompressionBytes(), Long.MAX_VALUE, new ModeWriter() {
+            @Override
+            public void header(BitWriter output) throws IOException {
+                writePreamble(output, VERSION_MODELED, 0);
+                output.writeByte(ORDER_1);
+                output.writeVarInt(originalLength);
+                contextModel.writeHeader(output);
+                contextModel.reset();
             }
-            builder.setLength(0);
+
+            @Override
+            public void encode(byte[] data, int length, BitWriter output) throws IOException {
+                contextModel.encode(data, 0, length, output);
+            }
+        }, progress);
+    }
+
+    private void wideToFile(CodecContext context, String source, String destination, Progress progress) throws HuffmanIOExcept {
+        encodeToFile(context, source, destination, getTotalCompressionBytes(), Long.MAX_VALUE, new ModeWriter() {
+            @Override
+            public void header(BitWriter output) throws IOException {
+                writePreamble(output, VERSION_MODELED, 0);
+                output.writeByte(WIDE_SYMBOLS);
+                output.writeVarInt(originalLength);
+                codes.writeLengths(output);
+            }
+
+            @Override
+            public void encode(byte[] data, int length, BitWriter output) throws IOException {
+                int i = 0;
+                for (; i + 1 < length; i += 2) {
+                    final int symbol = ((data[i] & 0xFF) << Byte.SIZE) | (data[i + 1] & 0xFF);
+                    output.write(codes.getCode(symbol), codes.getLength(symbol));
+                }
+                if (i < length) {
+                    final int symbol = (data[i] & 0xFF) << Byte.SIZE;
+                    output.write(codes.getCode(symbol), codes.getLength(symbol));
+                }
+            }
+        }, progress);
+    }
+
+    private void dictionaryToFile(CodecContext context, String source, String destination, Progress progress) throws HuffmanIOExcept {
+        encodeToFile(context, source, destination, getHeaderBytes() + originalLength, originalLength, new ModeWriter() {
+            @Override
+            public void header(BitWriter output) throws IOException {
+                writePreamble(output, VERSION_MODELED, 0);
+                output.writeByte(DICTIONARY);
+                output.write(Integer.toUnsignedLong(codedDictionary.getId()), Integer.SIZE);
+                output.writeVarInt(originalLength);
+            }
+
+            @Override
+            public void encode(byte[] data, int length, BitWriter output) throws IOException {
+                for (int i = 0; i < length; ++i) {
+                    final int symbol = data[i] & 0xFF;
+                    output.write(codes.getCode(symbol), codes.getLength(symbol));
+                }
+                counter.count(data, 0, length);
+            }
+
+            @Override
+            public void finish(long total) {
+                if (total != originalLength) {
+                    throw new HuffmanIOExcept();
+                }
+            }
+        }, progress);
+    }
+
+    private void adaptiveToFile(CodecContext context, String source, String destination, Progress progress) throws HuffmanIOExcept {
+        final long length = new File(source).length();
+        long total = 0;
+        try (InputStream fin = openInput(source); OutputStream fout = openOutput(destination, 0)) {
+            final AdaptiveHuffman model = new AdaptiveHuffman();
+            final byte[] inBuffer = context.getInputBuffer();
+            final BitWriter output = context.createWriter(fout);
+            writePreamble(output, VERSION, AdaptiveHuffman.FLAG_ADAPTIVE);
+            final CRC32C crc = new CRC32C();
+            int read;
+            while ((read = fin.read(inBuffer, 0, inBuffer.length)) >= 0) {
+                for (int i = 0; i < read; ++i) {
+                    model.encode(inBuffer[i] & 0xFF, output);
+                }
+                counter.count(inBuffer, 0, read);
+                crc.update(inBuffer, 0, read);
+                total += read;
+                progress.set(total, length);
+            }
+            model.finish(output);
+            if (checked) {
+                output.align();
+                output.write(crc.getValue(), Integer.SIZE);
+            }
+            output.finish();
+        } catch (IOException ioe) {
+            throw new HuffmanIOExcept();
         }
     }
 
-    private void printHeader(BufferedOutputStream output, StringBuilder converter) throws IOException {
+    private void printHeader(BitWriter output) throws IOException {
         final long size = getCompressionSize();
-        final int leafs = counter.nonzeroCount();
-        output.write((SIGNATURE & 0xFF00) >> 8); //Write signature.
-        output.write(SIGNATURE & 0x00FF);
-        output.write((leafs > 0 ? leafs-1 : 0) & 0x00FF);
-        converter.append(tree.toString());
+        if (format == HeaderFormat.V1) {
+            final int leafs = counter.nonzeroCount();
+            output.write(SIGNATURE, Short.SIZE); //Write signature.
+            output.writeByte(leafs > 0 ? leafs-1 : 0);
+            tree.write(output);
+        }
+        else {
+            writePreamble(output, VERSION, seekInterval > 0 ? SeekIndex.FLAG_SEEK_INDEX : 0);
+            if (checked) {
+                output.writeVarInt(originalLength);
+            }
+            codes.writeLengths(output);
+        }
         final byte padding = size == 0 ? (byte)0 : (byte)(7 - ((size-1) % 8));
-        converter.append(Integer.toBinaryString((padding & 0xFF) + 0x100).substring(1));
+        output.writeByte(padding);
     }
 }
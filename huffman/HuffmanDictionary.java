@@ -0,0 +1,167 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+public class HuffmanDictionary {
+    public static final short SIGNATURE = 7008;
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".hdict";
+
+    private final int id;
+    private final CodeTable codes;
+    private final byte[] lengths;
+    private volatile DecodeTable decoder = null;
+
+    public static class Registry {
+        public static final Registry SHARED = new Registry();
+
+        private final Map<Integer, HuffmanDictionary> dictionaries = new ConcurrentHashMap<>();
+
+        public HuffmanDictionary register(HuffmanDictionary dictionary) {
+            final HuffmanDictionary previous = dictionaries.putIfAbsent(dictionary.getId(), dictionary);
+            return previous == null ? dictionary : previous;
+        }
+
+        public HuffmanDictionary load(Path source) throws IOException {
+            return register(read(source));
+        }
+
+        public HuffmanDictionary get(int id) throws HuffmanCoding.HuffmanBadHeader {
+            final HuffmanDictionary dictionary = dictionaries.get(id);
+            if (dictionary == null) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman file references dictionary " + toHex(id) + " which has not been loaded.");
+            }
+            return dictionary;
+        }
+
+        public boolean contains(int id) {
+            return dictionaries.containsKey(id);
+        }
+
+        public int size() {
+            return dictionaries.size();
+        }
+    }
+
+    private HuffmanDictionary(CodeTable codes) throws IOException {
+        final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        final BitWriter writer = new BitWriter(serialized);
+        codes.writeLengths(writer);
+        writer.finish();
+        final CRC32C crc = new CRC32C();
+        this.codes = codes;
+        this.lengths = serialized.toByteArray();
+        crc.update(lengths);
+        this.id = (int)crc.getValue();
+    }
+
+    public static HuffmanDictionary fromCounts(TableCounter counts, int maxCodeLength) throws IOException {
+        final TableCounter smoothed = new TableCounter(256);
+        for (int symbol = 0; symbol < smoothed.getRange(); ++symbol) {
+            smoothed.add(symbol, counts.get(symbol) + 1);
+        }
+        final HuffmanTree tree = new HuffmanTree();
+        tree.initialize(smoothed, maxCodeLength);
+        return new HuffmanDictionary(tree.getCodeTable().canonical());
+    }
+
+    public static HuffmanDictionary train(List<Path> corpus, int maxCodeLength, CodecContext context, Progress progress) throws IOException {
+        final TableCounter counts = new TableCounter(256);
+        final byte[] buffer = context.getInputBuffer();
+        final ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        for (int i = 0; i < corpus.size(); ++i) {
+            try (FileChannel channel = FileChannel.open(corpus.get(i), StandardOpenOption.READ)) {
+                int read;
+                while ((read = channel.read(wrapper.clear())) >= 0) {
+                    counts.count(buffer, 0, read);
+                }
+            }
+            progress.set(i + 1, corpus.size());
+        }
+        return fromCounts(counts, maxCodeLength);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return toHex(id);
+    }
+
+    public CodeTable getCodes() {
+        return codes;
+    }
+
+    public DecodeTable getDecodeTable() {
+        DecodeTable table = decoder;
+        if (table == null) {
+            synchronized (this) {
+                table = decoder;
+                if (table == null) {
+                    decoder = table = new DecodeTable(codes);
+                }
+            }
+        }
+        return table;
+    }
+
+    public void write(Path destination) throws IOException {
+        final ByteArrayOutputStream file = new ByteArrayOutputStream();
+        final BitWriter writer = new BitWriter(file);
+        writer.write(SIGNATURE, Short.SIZE);
+        writer.writeByte(VERSION);
+        writer.write(Integer.toUnsignedLong(id), Integer.SIZE);
+        writer.writeBytes(lengths, 0, lengths.length);
+        writer.finish();
+        final CRC32C crc = new CRC32C();
+        crc.update(file.toByteArray());
+        writer.write(crc.getValue(), Integer.SIZE);
+        writer.finish();
+        Files.write(destination, file.toByteArray());
+    }
+
+    public static HuffmanDictionary read(Path source) throws IOException {
+        final byte[] file = Files.readAllBytes(source);
+        if (file.length < Short.BYTES + 1 + 2 * Integer.BYTES) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman dictionary " + source + " is truncated.");
+        }
+        final ByteBuffer view = ByteBuffer.wrap(file);
+        if (view.getShort() != SIGNATURE) {
+            throw new HuffmanCoding.HuffmanBadSignature();
+        }
+        final int version = view.get() & 0xFF;
+        if (version != VERSION) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman dictionary uses an unsupported format version(" + version + ").");
+        }
+        final CRC32C crc = new CRC32C();
+        crc.update(file, 0, file.length - Integer.BYTES);
+        if (view.getInt(file.length - Integer.BYTES) != (int)crc.getValue()) {
+            throw new HuffmanCoding.HuffmanBadChecksum("Huffman dictionary " + source);
+        }
+        final int id = view.getInt();
+        final InputStream input = new BufferedInputStream(new ByteArrayInputStream(file, view.position(), file.length - view.position() - Integer.BYTES));
+        final HuffmanDictionary dictionary = new HuffmanDictionary(CodeTable.readLengths(input, 256));
+        if (dictionary.getId() != id || dictionary.codes.getSymbolCount() != 256) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman dictionary " + source + " does not match its recorded id.");
+        }
+        return dictionary;
+    }
+
+    private static String toHex(int id) {
+        return String.format("%08x", id);
+    }
+}
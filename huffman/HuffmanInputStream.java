@@ -0,0 +1,174 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+public class HuffmanInputStream extends FilterInputStream {
+    private final int blockSize;
+    private final boolean checked;
+    private final boolean storable;
+    private final CRC32C crc = new CRC32C();
+    private byte[] packed = new byte[0];
+    private final byte[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private long bytesRead = 0;
+    private boolean ended = false;
+
+    public HuffmanInputStream(InputStream input) throws IOException {
+        this(input, readFlags(input), readBlockSize(input));
+    }
+
+    HuffmanInputStream(InputStream input, int flags, int blockSize) {
+        super(input);
+        this.checked = (flags & HuffmanCoding.FLAG_CHECKSUM) != 0;
+        this.storable = (flags & HuffmanCoding.FLAG_STORED) != 0;
+        this.blockSize = blockSize;
+        this.buffer = new byte[blockSize];
+    }
+
+    public static int readHeader(InputStream input) throws IOException {
+        readFlags(input);
+        return readBlockSize(input);
+    }
+
+    private static int readFlags(InputStream input) throws IOException {
+        final int high = input.read();
+        final int low = input.read();
+        if (high < 0 || low < 0 || (short)((high << 8) | low) != HuffmanCoding.SIGNATURE_VERSIONED) {
+            throw new HuffmanCoding.HuffmanBadSignature();
+        }
+        final int version = input.read();
+        if (version != HuffmanCoding.VERSION) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman stream uses an unsupported format version(" + version + ").");
+        }
+        final int flags = input.read();
+        if ((flags & ~(HuffmanCoding.FLAG_CHECKSUM | HuffmanCoding.FLAG_STORED)) != HuffmanOutputStream.FLAG_STREAM) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman source is not a stream, decode it with HuffmanCoding instead.");
+        }
+        return flags;
+    }
+
+    static int readBlockSize(InputStream input) throws IOException {
+        final long size = BitReader.readVarInt(input);
+        if (size < HuffmanOutputStream.MIN_BLOCK_SIZE || size > BlockContainer.MAX_BLOCK_SIZE) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman stream has an impossible block size of " + size + " bytes.");
+        }
+        return (int)size;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !readBlock()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] data, int offset, int length) throws IOException {
+        if ((offset | length) < 0 || length > data.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return 0;
+        }
+        if (position == limit && !readBlock()) {
+            return -1;
+        }
+        final int copied = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, data, offset, copied);
+        position += copied;
+        return copied;
+    }
+
+    @Override
+    public long skip(long length) throws IOException {
+        long skipped = 0;
+        while (skipped < length && (position < limit || readBlock())) {
+            final int step = (int)Math.min(length - skipped, limit - position);
+            position += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int limit) {
+
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("Huffman streams do not support mark and reset.");
+    }
+
+    private boolean readBlock() throws IOException {
+        if (ended) {
+            return false;
+        }
+        final long length = BitReader.readVarInt(in);
+        if (length == 0) {
+            ended = true;
+            return false;
+        }
+        final long entry = BitReader.readVarInt(in);
+        final long size = storable ? entry >>> 1 : entry;
+        final boolean stored = storable && (entry & 1) != 0;
+        if (length > blockSize || size > 256L * Long.BYTES + 16 + length * BitWriter.MAX_LENGTH / Byte.SIZE || (stored && size != length)) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman stream contains an impossible block.");
+        }
+        final int decoded;
+        if (stored) {
+            decoded = in.readNBytes(buffer, 0, (int)length);
+            if (decoded != length) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman stream ended in the middle of a block.");
+            }
+        }
+        else {
+            if (packed.length < size) {
+                packed = new byte[(int)size];
+            }
+            if (in.readNBytes(packed, 0, (int)size) != size) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman stream ended in the middle of a block.");
+            }
+            final InputStream block = new ByteArrayInputStream(packed, 0, (int)size);
+            final CodeTable table = CodeTable.readLengths(block, 256);
+            decoded = new DecodeTable(table).decode(new BitReader(block), 0, buffer, 0, (int)length);
+            if (decoded != length) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman stream block ended after " + decoded + " of " + length + " bytes.");
+            }
+        }
+        if (checked) {
+            final byte[] expected = in.readNBytes(Integer.BYTES);
+            crc.reset();
+            crc.update(buffer, 0, decoded);
+            if (expected.length != Integer.BYTES || ByteBuffer.wrap(expected).getInt() != (int)crc.getValue()) {
+                throw new HuffmanCoding.HuffmanBadChecksum("Huffman stream block");
+            }
+            bytesRead += Integer.BYTES;
+        }
+        bytesRead += size;
+        position = 0;
+        limit = decoded;
+        return true;
+    }
+}
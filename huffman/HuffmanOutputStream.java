@@ -0,0 +1,137 @@
+package huffman;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32C;
+
+public class HuffmanOutputStream extends FilterOutputStream {
+    public static final int FLAG_STREAM = 0x08;
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    public static final int MIN_BLOCK_SIZE = 1 << 12;
+
+    private final BitWriter writer;
+    private final byte[] buffer;
+    private final int maxCodeLength;
+    private final CRC32C crc = new CRC32C();
+    private int count = 0;
+    private boolean finished = false;
+
+    public HuffmanOutputStream(OutputStream output) throws IOException {
+        this(output, DEFAULT_BLOCK_SIZE, HuffmanCoding.DEFAULT_MAX_LENGTH);
+    }
+
+    public HuffmanOutputStream(OutputStream output, int blockSize) throws IOException {
+        this(output, blockSize, HuffmanCoding.DEFAULT_MAX_LENGTH);
+    }
+
+    public HuffmanOutputStream(OutputStream output, int blockSize, int maxCodeLength) throws IOException {
+        super(output);
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > BlockContainer.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be between " + MIN_BLOCK_SIZE + " and " + BlockContainer.MAX_BLOCK_SIZE + " bytes.");
+        }
+        if (maxCodeLength < 1 || maxCodeLength > BitWriter.MAX_LENGTH) {
+            throw new IllegalArgumentException("Maximum code length must be between 1 and " + BitWriter.MAX_LENGTH + " bits.");
+        }
+        this.buffer = new byte[blockSize];
+        this.maxCodeLength = maxCodeLength;
+        this.writer = new BitWriter(output, Math.min(65536, blockSize));
+        writer.write(HuffmanCoding.SIGNATURE_VERSIONED, Short.SIZE);
+        writer.writeByte(HuffmanCoding.VERSION);
+        writer.writeByte(FLAG_STREAM | HuffmanCoding.FLAG_CHECKSUM | HuffmanCoding.FLAG_STORED);
+        writer.writeVarInt(blockSize);
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        ensureOpen();
+        buffer[count++] = (byte)value;
+        if (count == buffer.length) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        ensureOpen();
+        if ((offset | length) < 0 || length > data.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (length > 0) {
+            final int copied = Math.min(length, buffer.length - count);
+            System.arraycopy(data, offset, buffer, count, copied);
+            count += copied;
+            offset += copied;
+            length -= copied;
+            if (count == buffer.length) {
+                writeBlock();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (finished) {
+            out.flush();
+            return;
+        }
+        writeBlock();
+        writer.finish();
+    }
+
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeBlock();
+        writer.writeVarInt(0);
+        writer.finish();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        final TableCounter counter = new TableCounter(256);
+        counter.count(buffer, 0, count);
+        final HuffmanTree tree = new HuffmanTree();
+        tree.initialize(counter, maxCodeLength);
+        final CodeTable table = tree.getCodeTable().canonical();
+
+        final long coded = table.getLengthTableBytes() + (table.getCompressionSize(counter) + Byte.SIZE - 1) / Byte.SIZE;
+        writer.writeVarInt(count);
+        if (coded >= count) {
+            writer.writeVarInt((long)count << 1 | 1);
+            writer.writeBytes(buffer, 0, count);
+        }
+        else {
+            writer.writeVarInt(coded << 1);
+            table.writeLengths(writer);
+            for (int i = 0; i < count; ++i) {
+                final int symbol = buffer[i] & 0xFF;
+                writer.write(table.getCode(symbol), table.getLength(symbol));
+            }
+            writer.align();
+        }
+        crc.reset();
+        crc.update(buffer, 0, count);
+        writer.write(crc.getValue(), Integer.SIZE);
+        count = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Huffman stream has already been finished.");
+        }
+    }
+}
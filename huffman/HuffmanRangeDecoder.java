@@ -0,0 +1,129 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class HuffmanRangeDecoder implements Closeable {
+    private final FileChannel channel;
+    private final CodecContext.Pool pool;
+    private final CodeTable codes;
+    private final DecodeTable decoder;
+    private final SeekIndex index;
+    private final long dataOffset;
+
+    public HuffmanRangeDecoder(Path source) throws IOException {
+        this(source, CodecContext.Pool.SHARED);
+    }
+
+    public HuffmanRangeDecoder(Path source, CodecContext.Pool pool) throws IOException {
+        this.pool = pool;
+        this.channel = FileChannel.open(source, StandardOpenOption.READ);
+        try {
+            final InputStream header = new BufferedInputStream(new ChannelInputStream(channel, 0, channel.size()), 4096);
+            final int high = header.read();
+            final int low = header.read();
+            if (high < 0 || low < 0 || (short)((high << 8) | low) != HuffmanCoding.SIGNATURE_VERSIONED) {
+                throw new HuffmanCoding.HuffmanBadSignature();
+            }
+            final int version = header.read();
+            if (version != HuffmanCoding.VERSION) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman file uses an unsupported format version(" + version + ").");
+            }
+            final int flags = header.read();
+            if ((flags & ~HuffmanCoding.FLAG_CHECKSUM) != SeekIndex.FLAG_SEEK_INDEX) {
+                throw new HuffmanCoding.HuffmanBadHeader("Huffman file was encoded without a seek index.");
+            }
+            final long length = flags == SeekIndex.FLAG_SEEK_INDEX ? -1 : BitReader.readVarInt(header);
+            codes = CodeTable.readLengths(header, 256);
+            decoder = new DecodeTable(codes);
+            dataOffset = Short.BYTES + 3 + (length < 0 ? 0 : BitWriter.varIntBytes(length)) + codes.getLengthTableBytes();
+            index = SeekIndex.read(channel, dataOffset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long getLength() {
+        return index.getLength();
+    }
+
+    public SeekIndex getIndex() {
+        return index;
+    }
+
+    public int read(long position, byte[] output, int offset, int length) throws IOException {
+        if (position < 0 || (offset | length) < 0 || length > output.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (position >= index.getLength()) {
+            return -1;
+        }
+        final int count = (int)Math.min(length, index.getLength() - position);
+        final CodecContext context = pool.acquire();
+        try {
+            final BitReader reader = seek(context, position);
+            decodeFully(reader, output, offset, count);
+        } finally {
+            pool.release(context);
+        }
+        return count;
+    }
+
+    public long decode(long position, long length, OutputStream output) throws IOException {
+        if (position < 0 || length < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        long remaining = Math.max(0, Math.min(length, index.getLength() - position));
+        final long total = remaining;
+        final CodecContext context = pool.acquire();
+        try {
+            final BitReader reader = seek(context, Math.min(position, index.getLength()));
+            final byte[] buffer = context.getOutputBuffer();
+            while (remaining > 0) {
+                final int count = (int)Math.min(buffer.length, remaining);
+                decodeFully(reader, buffer, 0, count);
+                output.write(buffer, 0, count);
+                remaining -= count;
+            }
+        } finally {
+            pool.release(context);
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private BitReader seek(CodecContext context, long position) throws IOException {
+        final long checkpoint = position / index.getInterval();
+        final long bits = checkpoint == 0 ? dataOffset * Byte.SIZE : index.getCheckpoint(checkpoint);
+        final long start = bits / Byte.SIZE;
+        final BitReader reader = context.createReader(new ChannelInputStream(channel, start, index.getIndexOffset() - start));
+        reader.refill();
+        reader.skip((int)(bits % Byte.SIZE));
+        long skip = position - checkpoint * index.getInterval();
+        final byte[] scratch = context.getInputBuffer();
+        while (skip > 0) {
+            final int count = (int)Math.min(scratch.length, skip);
+            decodeFully(reader, scratch, 0, count);
+            skip -= count;
+        }
+        return reader;
+    }
+
+    private void decodeFully(BitReader reader, byte[] output, int offset, int length) throws IOException {
+        final int decoded = decoder.decode(reader, 0, output, offset, length);
+        if (decoded != length) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman data ended " + (length - decoded) + " bytes before the length recorded in its seek index.");
+        }
+    }
+}
@@ -68,18 +68,38 @@ public class HuffmanTree {
 
     private TreeNode root;
     private int length;
+    private long optimalSize;
 
     public HuffmanTree() {
 
     }
 
+    public void initialize(TableCounter counts, int maxLength) {
+        initialize(counts);
+        final int[] lengths = getLengths();
+        int depth = 0;
+        optimalSize = 0;
+        for (int i = 0; i < lengths.length; ++i) {
+            depth = Math.max(depth, lengths[i]);
+            optimalSize += counts.get(i) * lengths[i];
+        }
+        if (depth > maxLength) {
+            final int symbolBits = Integer.SIZE - Integer.numberOfLeadingZeros(counts.nonzeroCount() - 1);
+            initialize(CodeTable.fromLengths(PackageMerge.limit(counts, Math.max(maxLength, symbolBits))));
+        }
+    }
+
+    public long getOptimalSize() {
+        return optimalSize;
+    }
+
     public void initialize(TableCounter counts) {
         final PriorityQueue<TreeNode> queue = new PriorityQueue<>();
         length = counts.getRange();
 
-        for (var value : counts) {
-            if (value.value > 0) {
-                queue.add(new TreeNode(value.index, value.value));
+        for (int i = 0; i < length; ++i) {
+            if (counts.get(i) > 0) {
+                queue.add(new TreeNode(i, counts.get(i)));
             }
         }
 
@@ -97,12 +117,54 @@ public class HuffmanTree {
         }
     }
 
+    public void initialize(CodeTable codes) {
+        length = codes.getRange();
+        root = null;
+        for (int i = 0; i < length; ++i) {
+            final int depth = codes.getLength(i);
+            if (depth == 0) {
+                continue;
+            }
+            if (root == null) {
+                root = new TreeNode(-1, 0);
+            }
+            final long code = codes.getCode(i);
+            TreeNode node = root;
+            for (int bit = depth - 1; bit > 0; --bit) {
+                if ((code >>> bit & 1) == 0) {
+                    node = node.left == null ? (node.left = new TreeNode(-1, 0)) : node.left;
+                }
+                else {
+                    node = node.right == null ? (node.right = new TreeNode(-1, 0)) : node.right;
+                }
+            }
+            if ((code & 1) == 0) {
+                node.left = new TreeNode(i, 0);
+            }
+            else {
+                node.right = new TreeNode(i, 0);
+            }
+        }
+    }
+
     public Table<String> getEncodings() {
         Table<String> encoder = new Table<>(String.class, length);
         traverse(root, "", encoder);
         return encoder;
     }
 
+    public int[] getLengths() {
+        final int[] lengths = new int[length];
+        traverse(root, 0, lengths);
+        return lengths;
+    }
+
+    public CodeTable getCodeTable() {
+        final CodeTable table = new CodeTable(length);
+        traverse(root, 0, 0, table);
+        return table;
+    }
+
     public void fromStream(int length, int leafs, InputStream stream) {
         root = new TreeNode(-1, 0, null, null);
         this.length = length;
@@ -126,6 +188,40 @@ public class HuffmanTree {
         return builder.toString();
     }
 
+    public long getHeaderBits() {
+        final long bits = headerBits(root);
+        return bits == 0 ? 0 : (bits + Byte.SIZE - 1) & ~(long)(Byte.SIZE - 1);
+    }
+
+    public void write(BitWriter writer) throws IOException {
+        writeNode(root, writer);
+        writer.align();
+    }
+
+    private void writeNode(TreeNode node, BitWriter writer) throws IOException {
+        if (node == null) {
+            return;
+        }
+        if (node.character >= 0) {
+            writer.write(0x100 | node.character, Byte.SIZE + 1);
+        }
+        else {
+            writer.write(0, 1);
+        }
+        writeNode(node.left, writer);
+        writeNode(node.right, writer);
+    }
+
+    private long headerBits(TreeNode node) {
+        if (node == null) {
+            return 0;
+        }
+        if (node.character >= 0) {
+            return Byte.SIZE + 1;
+        }
+        return 1 + headerBits(node.left) + headerBits(node.right);
+    }
+
     private void buildTree(TreeNode node, StringBuilder builder) {
         if (node == null) {
             return;
@@ -191,4 +287,32 @@ public class HuffmanTree {
         traverse(node.left, encoding+"0", encoder);
         traverse(node.right, encoding+"1", encoder);
     }
+
+    private void traverse(TreeNode node, long code, int depth, CodeTable table) {
+        if (node == null) {
+            return;
+        }
+        if (node.character >= 0) {
+            table.set(node.character, code, depth);
+            return;
+        }
+        if (depth == BitWriter.MAX_LENGTH) {
+            throw new HuffmanCoding.HuffmanCodeLength(depth + 1);
+        }
+
+        traverse(node.left, code << 1, depth + 1, table);
+        traverse(node.right, (code << 1) | 1, depth + 1, table);
+    }
+
+    private void traverse(TreeNode node, int depth, int[] lengths) {
+        if (node == null) {
+            return;
+        }
+        if (node.character >= 0) {
+            lengths[node.character] = depth;
+        }
+
+        traverse(node.left, depth + 1, lengths);
+        traverse(node.right, depth + 1, lengths);
+    }
 }
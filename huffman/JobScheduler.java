@@ -0,0 +1,252 @@
+package huffman;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class JobScheduler {
+    public static final int DEFAULT_CONCURRENCY = Math.max(2, Runtime.getRuntime().availableProcessors());
+    public static final JobScheduler SHARED = new JobScheduler(DEFAULT_CONCURRENCY);
+    private static final long KEEP_ALIVE_MILLIS = 1000;
+
+    public enum Status {
+        QUEUED, RUNNING, PAUSED, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    public interface Listener {
+        void changed(Job job);
+    }
+
+    private final int concurrency;
+    private final ThreadPoolExecutor executor;
+    private final Map<Long, Job> active = new ConcurrentSkipListMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    public class Job implements Runnable {
+        private final long id;
+        private final String name;
+        private final ProgressableTask task;
+        private final Listener listener;
+        private final Progress progress = new Progress();
+        private volatile Status status = Status.QUEUED;
+        private volatile int phase = -1;
+        private volatile String message = "Queued...";
+        private volatile double baseline = 0.;
+        private volatile double nextBaseline = 0.;
+        private volatile Exception error = null;
+
+        private Job(long id, String name, ProgressableTask task, Listener listener) {
+            this.id = id;
+            this.name = name;
+            this.task = task;
+            this.listener = listener;
+            progress.setListener(ignored -> notifyListener());
+        }
+
+        @Override
+        public void run() {
+            if (status != Status.QUEUED) {
+                return;
+            }
+            running.incrementAndGet();
+            status = Status.RUNNING;
+            Status outcome = Status.FAILED;
+            try {
+                final var phases = task.getPhases();
+                for (int i = 0; i < phases.length; ++i) {
+                    baseline = phases[i].progress;
+                    nextBaseline = i + 1 < phases.length ? phases[i + 1].progress : phases[i].progress;
+                    message = phases[i].message;
+                    phase = i;
+                    progress.reset();
+                    notifyListener();
+                    progress.checkpoint();
+                    phases[i].run(progress);
+                }
+                outcome = Status.SUCCEEDED;
+            } catch (HuffmanCoding.HuffmanCancelled except) {
+                outcome = Status.CANCELLED;
+            } catch (Exception except) {
+                error = except;
+            } finally {
+                running.decrementAndGet();
+                finish(outcome);
+            }
+        }
+
+        public void cancel() {
+            progress.cancel();
+            if (executor.remove(this)) {
+                finish(Status.CANCELLED);
+            }
+        }
+
+        public void pause() {
+            progress.pause();
+            notifyListener();
+        }
+
+        public void resume() {
+            progress.resume();
+            notifyListener();
+        }
+
+        private void finish(Status outcome) {
+            try {
+                task.cleanup();
+            } catch (RuntimeException ignored) {
+
+            }
+            active.remove(id);
+            if (outcome == Status.SUCCEEDED) {
+                succeeded.incrementAndGet();
+            }
+            else if (outcome == Status.CANCELLED) {
+                cancelled.incrementAndGet();
+            }
+            else {
+                failed.incrementAndGet();
+            }
+            status = outcome;
+            notifyListener();
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ProgressableTask getTask() {
+            return task;
+        }
+
+        public Status getStatus() {
+            final Status current = status;
+            return current == Status.RUNNING && progress.isPaused() ? Status.PAUSED : current;
+        }
+
+        public boolean isFinished() {
+            final Status current = status;
+            return current == Status.SUCCEEDED || current == Status.FAILED || current == Status.CANCELLED;
+        }
+
+        public int getPhase() {
+            return phase;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        public double getFraction() {
+            final Status current = status;
+            if (current == Status.SUCCEEDED) {
+                return 1.;
+            }
+            if (current == Status.QUEUED || current == Status.CANCELLED) {
+                return 0.;
+            }
+            final double start = baseline;
+            return start + (nextBaseline - start) * progress.getFraction();
+        }
+
+        private void notifyListener() {
+            if (listener != null) {
+                listener.changed(this);
+            }
+        }
+    }
+
+    public JobScheduler(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Job scheduler must run at least one job at a time.");
+        }
+        this.concurrency = concurrency;
+        final AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "huffman-job-" + threads.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public Job submit(String name, ProgressableTask task, Listener listener) {
+        final Job job = new Job(ids.incrementAndGet(), name, task, listener);
+        active.put(job.getId(), job);
+        job.notifyListener();
+        executor.execute(job);
+        return job;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public List<Job> getJobs() {
+        return new ArrayList<>(active.values());
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    public long getSucceededCount() {
+        return succeeded.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getCancelledCount() {
+        return cancelled.get();
+    }
+
+    public void cancelAll() {
+        for (Job job : getJobs()) {
+            job.cancel();
+        }
+    }
+
+    public void pauseAll() {
+        for (Job job : getJobs()) {
+            job.pause();
+        }
+    }
+
+    public void resumeAll() {
+        for (Job job : getJobs()) {
+            job.resume();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,81 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class MappedInputStream extends InputStream {
+    public static final long WINDOW_BYTES = 1L << 28;
+
+    private final FileChannel channel;
+    private final long length;
+    private final long window;
+    private MappedByteBuffer mapped = null;
+    private long position = 0;
+
+    public MappedInputStream(String source) throws IOException {
+        this(source, WINDOW_BYTES);
+    }
+
+    public MappedInputStream(String source, long window) throws IOException {
+        this.channel = FileChannel.open(Path.of(source), StandardOpenOption.READ);
+        this.length = channel.size();
+        this.window = Math.max(1, Math.min(window, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!remap()) {
+            return -1;
+        }
+        ++position;
+        return mapped.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        if (!remap()) {
+            return -1;
+        }
+        final int read = Math.min(count, mapped.remaining());
+        mapped.get(buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        final long skipped = Math.max(0, Math.min(count, length - position));
+        position += skipped;
+        mapped = null;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int)Math.min(Integer.MAX_VALUE, length - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        channel.close();
+    }
+
+    private boolean remap() throws IOException {
+        if (mapped != null && mapped.hasRemaining()) {
+            return true;
+        }
+        if (position >= length) {
+            return false;
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(window, length - position));
+        return true;
+    }
+}
@@ -0,0 +1,63 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class MappedOutputStream extends OutputStream {
+    public static final long WINDOW_BYTES = 1L << 26;
+
+    private final FileChannel channel;
+    private final long expected;
+    private MappedByteBuffer mapped = null;
+    private long position = 0;
+
+    public MappedOutputStream(String destination) throws IOException {
+        this(destination, 0);
+    }
+
+    public MappedOutputStream(String destination, long expected) throws IOException {
+        this.channel = FileChannel.open(Path.of(destination), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.expected = expected;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        remap();
+        mapped.put((byte)value);
+        ++position;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int count) throws IOException {
+        while (count > 0) {
+            remap();
+            final int written = Math.min(count, mapped.remaining());
+            mapped.put(buffer, offset, written);
+            position += written;
+            offset += written;
+            count -= written;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        if (channel.size() > position) {
+            channel.truncate(position);
+        }
+        channel.close();
+    }
+
+    private void remap() throws IOException {
+        if (mapped != null && mapped.hasRemaining()) {
+            return;
+        }
+        final long size = position < expected ? Math.min(Integer.MAX_VALUE, expected - position) : WINDOW_BYTES;
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+    }
+}
@@ -0,0 +1,75 @@
+package huffman;
+
+import java.util.Arrays;
+
+public class PackageMerge {
+    private PackageMerge() {
+
+    }
+
+    public static int[] limit(TableCounter counts, int maxLength) {
+        final int range = counts.getRange();
+        final int[] lengths = new int[range];
+        final int symbols = counts.nonzeroCount();
+        if (symbols == 0) {
+            return lengths;
+        }
+        if (maxLength < 1 || maxLength > BitWriter.MAX_LENGTH || (maxLength < Integer.SIZE - 1 && (1 << maxLength) < symbols)) {
+            throw new IllegalArgumentException("Cannot fit " + symbols + " symbols into codes of at most " + maxLength + " bits.");
+        }
+
+        final Integer[] order = new Integer[symbols];
+        int next = 0;
+        for (int i = 0; i < range; ++i) {
+            if (counts.get(i) > 0) {
+                order[next++] = i;
+            }
+        }
+        Arrays.sort(order, (Integer lhs, Integer rhs) -> Long.compare(counts.get(lhs), counts.get(rhs)));
+        final long[] weights = new long[symbols];
+        for (int i = 0; i < symbols; ++i) {
+            weights[i] = counts.get(order[i]);
+        }
+        if (symbols == 1) {
+            lengths[order[0]] = 1;
+            return lengths;
+        }
+
+        final boolean[][] leafs = new boolean[maxLength][];
+        long[] list = weights.clone();
+        leafs[0] = new boolean[symbols];
+        Arrays.fill(leafs[0], true);
+        for (int level = 1; level < maxLength; ++level) {
+            final int packages = list.length / 2;
+            final long[] merged = new long[symbols + packages];
+            final boolean[] leaf = new boolean[merged.length];
+            int l = 0;
+            int p = 0;
+            for (int i = 0; i < merged.length; ++i) {
+                final long packaged = p < packages ? list[2 * p] + list[2 * p + 1] : Long.MAX_VALUE;
+                if (l < symbols && weights[l] <= packaged) {
+                    merged[i] = weights[l++];
+                    leaf[i] = true;
+                }
+                else {
+                    merged[i] = packaged;
+                    ++p;
+                }
+            }
+            list = merged;
+            leafs[level] = leaf;
+        }
+
+        int selected = 2 * symbols - 2;
+        for (int level = maxLength - 1; level >= 0 && selected > 0; --level) {
+            int leafCount = 0;
+            for (int i = 0; i < selected; ++i) {
+                if (leafs[level][i]) {
+                    lengths[order[leafCount++]]++;
+                }
+            }
+            selected = 2 * (selected - leafCount);
+        }
+        return lengths;
+    }
+}
@@ -48,7 +48,10 @@ public class PrimaryController {
     @FXML
     protected CheckMenuItem forceCheck;
 
-    private Thread process;
+    @FXML
+    protected CheckMenuItem legacyCheck;
+
+    private TaskProcessor processor;
 
     private interface Encodable {
         void begin(String source, String destination);
@@ -57,6 +60,7 @@ public class PrimaryController {
     @FXML
     protected void initialize() {
         progress.setProgress(0.);
+        processor = new TaskProcessor(progress, status, JobScheduler.SHARED);
 
         final int OUTLINE_THICKNESS = 1;
         decodeBox.heightProperty().bind(dragDrop.heightProperty().divide(2).subtract(OUTLINE_THICKNESS));
@@ -107,6 +111,7 @@ public class PrimaryController {
                                 + HYPHEN_POINT + "Encode: Select a source file to encode.\n"
                                 + HYPHEN_POINT + "Decode: Select a source file to decode.\n"
                                 + HYPHEN_POINT + "Read Count: Count the frequency of byte signatures in a file.\n"
+                                + HYPHEN_POINT + "Pause/Resume/Cancel Jobs: Pause, resume or cancel every queued and running job. Cancelled jobs remove their partial output.\n"
                            + BULLET_POINT + "Tabs\n"
                                 + HYPHEN_POINT + "Drag & Drop: Drag a file to the ENCODE area to encode the file or drag it to the DECODE area to decode the encoded file.\n"
                                 + HYPHEN_POINT + "Character Count: Displays the frequency/count of byte signatures in a file.\n"
@@ -120,33 +125,36 @@ public class PrimaryController {
     @FXML
     public void readCount(ActionEvent actionEvent) {
         final File file = CreateFileWindow.chooseFile();
-        if (file == null || (process != null && process.isAlive())) {
+        if (file == null) {
             return;
         }
         final var counter = new VisualHuffmanCount(forceCheck, counts, encodings, file.getPath());
-        final var processor = new TaskProcessor(progress, status, counter);
-        process = new Thread(processor);
-        process.start();
+        processor.submit("counting " + file.getName(), counter);
+    }
+
+    @FXML
+    public void pauseJobs(ActionEvent actionEvent) {
+        processor.pauseAll();
+    }
+
+    @FXML
+    public void resumeJobs(ActionEvent actionEvent) {
+        processor.resumeAll();
+    }
+
+    @FXML
+    public void cancelJobs(ActionEvent actionEvent) {
+        processor.cancelAll();
     }
 
     private void encode(String source, String destination) {
-        if (process != null && process.isAlive()) {
-            return;
-        }
-        final var encoder = new VisualHuffmanEncoding(forceCheck, counts, encodings, source, destination);
-        final var processor = new TaskProcessor(progress, status, encoder);
-        process = new Thread(processor);
-        process.start();
+        final var encoder = new VisualHuffmanEncoding(forceCheck, legacyCheck, counts, encodings, source, destination);
+        processor.submit("encoding " + new File(source).getName(), encoder);
     }
 
     private void decode(String source, String destination) {
-        if (process != null && process.isAlive()) {
-            return;
-        }
         final var decoder = new VisualHuffmanDecoding(counts, encodings, source, destination);
-        final var processor = new TaskProcessor(progress, status, decoder);
-        process = new Thread(processor);
-        process.start();
+        processor.submit("decoding " + new File(source).getName(), decoder);
     }
 
     private void dragOver(DragEvent drag) {
@@ -180,16 +188,22 @@ public class PrimaryController {
         final boolean success = dragboard.hasFiles();
 
         if (success) {
-            final String source = dragboard.getFiles().get(0).getPath();
-            final String extension = source.substring(source.lastIndexOf('.'));
-            final String split = source.substring(0, source.lastIndexOf('.'));
-            if (split.endsWith(ending)) {
-                final String fixed = split.substring(0, split.lastIndexOf('_')) + replacement + extension;
-                encodable.begin(source, fixed);
-            }
-            else {
-                final String fixed = split + replacement + extension;
-                encodable.begin(source, fixed);
+            for (File file : dragboard.getFiles()) {
+                if (!file.isFile()) {
+                    continue;
+                }
+                final String source = file.getPath();
+                final int dot = source.lastIndexOf('.');
+                final String extension = dot < 0 ? "" : source.substring(dot);
+                final String split = dot < 0 ? source : source.substring(0, dot);
+                if (split.endsWith(ending)) {
+                    final String fixed = split.substring(0, split.lastIndexOf('_')) + replacement + extension;
+                    encodable.begin(source, fixed);
+                }
+                else {
+                    final String fixed = split + replacement + extension;
+                    encodable.begin(source, fixed);
+                }
             }
         }
         drag.setDropCompleted(success);
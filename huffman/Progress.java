@@ -0,0 +1,127 @@
+package huffman;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Progress {
+    public static final long NOTIFY_INTERVAL_NANOS = 16_000_000L;
+    private static final int RUNNING = 0;
+    private static final int PAUSED = 1;
+    private static final int CANCELLED = 2;
+
+    public interface Listener {
+        void progressed(Progress progress);
+    }
+
+    private final AtomicLong done = new AtomicLong();
+    private volatile long total = 0;
+    private volatile long notified = 0;
+    private volatile Listener listener = null;
+    private volatile int control = RUNNING;
+
+    public Progress() {
+
+    }
+
+    public Progress(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void set(long done, long total) {
+        checkpoint();
+        this.total = total;
+        this.done.set(done);
+        changed();
+    }
+
+    public void add(long bytes) {
+        checkpoint();
+        done.addAndGet(bytes);
+        changed();
+    }
+
+    public void complete() {
+        set(1, 1);
+    }
+
+    public void reset() {
+        total = 0;
+        done.set(0);
+        notified = 0;
+    }
+
+    public void checkpoint() {
+        if (control != RUNNING) {
+            await();
+        }
+    }
+
+    public synchronized void pause() {
+        if (control == RUNNING) {
+            control = PAUSED;
+        }
+    }
+
+    public synchronized void resume() {
+        if (control == PAUSED) {
+            control = RUNNING;
+            notifyAll();
+        }
+    }
+
+    public synchronized void cancel() {
+        control = CANCELLED;
+        notifyAll();
+    }
+
+    public boolean isPaused() {
+        return control == PAUSED;
+    }
+
+    public boolean isCancelled() {
+        return control == CANCELLED;
+    }
+
+    public long getDone() {
+        return done.get();
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public double getFraction() {
+        final long whole = total;
+        return whole <= 0 ? 0. : Math.min(1., (double)done.get() / whole);
+    }
+
+    private synchronized void await() {
+        while (control == PAUSED) {
+            try {
+                wait();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                control = CANCELLED;
+            }
+        }
+        if (control == CANCELLED) {
+            throw new HuffmanCoding.HuffmanCancelled();
+        }
+    }
+
+    private void changed() {
+        final Listener target = listener;
+        if (target == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        final long last = notified;
+        if (last == 0 || now - last >= NOTIFY_INTERVAL_NANOS || (total > 0 && done.get() >= total)) {
+            notified = now;
+            target.progressed(this);
+        }
+    }
+}
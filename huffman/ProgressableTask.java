@@ -1,13 +1,11 @@
 package huffman;
 
-import java.util.concurrent.atomic.AtomicReference;
-
 public abstract class ProgressableTask  {
-    protected interface RunnableTask {
-        void run(AtomicReference<Double> progress) throws Exception;
+    public interface RunnableTask {
+        void run(Progress progress) throws Exception;
     }
 
-    protected class TaskPhase implements RunnableTask {
+    public class TaskPhase implements RunnableTask {
         public String message;
         public Double progress;
         public RunnableTask task;
@@ -18,7 +16,7 @@ public abstract class ProgressableTask  {
             this.task = task;
         }
 
-        public void run(AtomicReference<Double> progress) throws Exception {
+        public void run(Progress progress) throws Exception {
             task.run(progress);
         }
     }
@@ -0,0 +1,100 @@
+package huffman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class SeekIndex {
+    public static final int FLAG_SEEK_INDEX = 0x20;
+    public static final int DEFAULT_INTERVAL = 64 << 10;
+    public static final int MIN_INTERVAL = 1 << 12;
+    public static final int MAX_INTERVAL = 1 << 30;
+    public static final int FOOTER_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final FileChannel channel;
+    private final int interval;
+    private final long length;
+    private final long indexOffset;
+    private final long checkpoints;
+
+    private SeekIndex(FileChannel channel, int interval, long length, long indexOffset, long checkpoints) {
+        this.channel = channel;
+        this.interval = interval;
+        this.length = length;
+        this.indexOffset = indexOffset;
+        this.checkpoints = checkpoints;
+    }
+
+    public static long getIndexBytes(long length, int interval) {
+        return length / interval * Long.BYTES + FOOTER_BYTES;
+    }
+
+    public static void write(BitWriter writer, long[] checkpoints, int count, long length, int interval) throws IOException {
+        writer.align();
+        final long indexOffset = writer.getBitCount() / Byte.SIZE;
+        for (int i = 0; i < count; ++i) {
+            writer.write(checkpoints[i], Long.SIZE);
+        }
+        writer.write(length, Long.SIZE);
+        writer.write(interval, Integer.SIZE);
+        writer.write(indexOffset, Long.SIZE);
+    }
+
+    public static SeekIndex read(FileChannel channel, long dataOffset) throws IOException {
+        final long size = channel.size();
+        if (size < dataOffset + FOOTER_BYTES) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman file is missing its seek index.");
+        }
+        final ByteBuffer footer = read(channel, size - FOOTER_BYTES, FOOTER_BYTES);
+        final long length = footer.getLong();
+        final int interval = footer.getInt();
+        final long indexOffset = footer.getLong();
+        if (interval < MIN_INTERVAL || interval > MAX_INTERVAL || length < 0 || indexOffset < dataOffset
+                || indexOffset > size - FOOTER_BYTES || (size - FOOTER_BYTES - indexOffset) / Long.BYTES != length / interval
+                || (size - FOOTER_BYTES - indexOffset) % Long.BYTES != 0) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman file has a corrupt seek index.");
+        }
+        return new SeekIndex(channel, interval, length, indexOffset, length / interval);
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getIndexOffset() {
+        return indexOffset;
+    }
+
+    public long getCheckpointCount() {
+        return checkpoints;
+    }
+
+    public long getCheckpoint(long index) throws IOException {
+        if (index == 0) {
+            return 0;
+        }
+        if (index < 0 || index > checkpoints) {
+            throw new IndexOutOfBoundsException("Seek index has no checkpoint " + index + ".");
+        }
+        final long bits = read(channel, indexOffset + (index - 1) * Long.BYTES, Long.BYTES).getLong();
+        if (bits < 0 || bits > indexOffset * Byte.SIZE) {
+            throw new HuffmanCoding.HuffmanBadHeader("Huffman seek index points past the encoded data.");
+        }
+        return bits;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -1,17 +1,30 @@
 package huffman;
 
-import java.util.Iterator;
+import java.util.Arrays;
+
+public class TableCounter {
+    private static final int LANES = 4;
+
+    private final long[] table;
+    private int[] lanes = null;
+
+    public interface CountConsumer {
+        void accept(int symbol, long count);
+    }
 
-public class TableCounter extends Table<Long> {
     public TableCounter(int range) {
-        super(Long.class, range);
+        table = new long[range];
+    }
 
-        for (int i = 0; i < range; ++i) {
-            table[i] = 0L;
-        }
+    public int getRange() {
+        return table.length;
+    }
+
+    public long get(int key) {
+        return table[key];
     }
 
-    public long add(int key, int value) {
+    public long add(int key, long value) {
         return (table[key] += value);
     }
 
@@ -19,6 +32,61 @@ public class TableCounter extends Table<Long> {
         return add(key, 1);
     }
 
+    public void count(byte[] data, int offset, int length) {
+        final int range = table.length;
+        if (lanes == null) {
+            lanes = new int[LANES * range];
+        }
+        final int[] lanes = this.lanes;
+        final int end = offset + length;
+        int i = offset;
+        for (; i + LANES <= end; i += LANES) {
+            lanes[data[i] & 0xFF]++;
+            lanes[range + (data[i + 1] & 0xFF)]++;
+            lanes[2 * range + (data[i + 2] & 0xFF)]++;
+            lanes[3 * range + (data[i + 3] & 0xFF)]++;
+        }
+        for (; i < end; ++i) {
+            lanes[data[i] & 0xFF]++;
+        }
+        for (int lane = 0; lane < lanes.length; lane += range) {
+            for (int key = 0; key < range; ++key) {
+                table[key] += lanes[lane + key];
+                lanes[lane + key] = 0;
+            }
+        }
+    }
+
+    public void countWide(byte[] data, int offset, int length) {
+        final long[] table = this.table;
+        final int end = offset + length;
+        int i = offset;
+        for (; i + 1 < end; i += 2) {
+            ++table[((data[i] & 0xFF) << Byte.SIZE) | (data[i + 1] & 0xFF)];
+        }
+        if (i < end) {
+            ++table[(data[i] & 0xFF) << Byte.SIZE];
+        }
+    }
+
+    public void addAll(TableCounter other) {
+        for (int i = 0; i < table.length; ++i) {
+            table[i] += other.table[i];
+        }
+    }
+
+    public boolean matches(TableCounter other) {
+        return Arrays.equals(table, other.table);
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (long value : table) {
+            total += value;
+        }
+        return total;
+    }
+
     public int nonzeroCount() {
         int total = 0;
         for (int i = 0; i < table.length; ++i) {
@@ -28,4 +96,10 @@ public class TableCounter extends Table<Long> {
         }
         return total;
     }
+
+    public void forEach(CountConsumer consumer) {
+        for (int i = 0; i < table.length; ++i) {
+            consumer.accept(i, table[i]);
+        }
+    }
 }
@@ -6,129 +6,110 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.stage.Stage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 
-public class TaskProcessor implements Runnable {
+public class TaskProcessor implements JobScheduler.Listener {
     private final ProgressBar progress;
     private final Label status;
-    private final ProgressableTask task;
+    private final JobScheduler scheduler;
 
-    private static class PhaseProgress {
-        private Integer active;
-        private AtomicReference<Double> progress;
-        private ProgressableTask.TaskPhase[] phases;
+    private final Map<Long, JobScheduler.Job> batch = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
 
-        private static class Data {
-            private Integer active;
-            private Double progress;
-
-            public Data(Integer active, Double progress) {
-                this.active = active;
-                this.progress = progress;
-            }
-
-            public int getActive() {
-                return active;
-            }
+    public TaskProcessor(ProgressBar progress, Label status, JobScheduler scheduler) {
+        this.progress = progress;
+        this.status = status;
+        this.scheduler = scheduler;
+    }
 
-            public double getProgress() {
-                return progress;
+    public JobScheduler.Job submit(String name, ProgressableTask task) {
+        synchronized (batch) {
+            if (!batch.isEmpty() && batch.values().stream().allMatch(JobScheduler.Job::isFinished)) {
+                batch.clear();
             }
         }
+        final JobScheduler.Job job = scheduler.submit(name, task, this);
+        batch.putIfAbsent(job.getId(), job);
+        return job;
+    }
 
-        public PhaseProgress(AtomicReference<Double> progress, ProgressableTask.TaskPhase[] phases) {
-            this.active = 0;
-            this.progress = progress;
-            this.phases = phases;
+    @Override
+    public void changed(JobScheduler.Job job) {
+        batch.putIfAbsent(job.getId(), job);
+        if (job.getStatus() == JobScheduler.Status.FAILED) {
+            report(job);
         }
-
-        synchronized public Data get() {
-            return new Data(active, progress.get());
+        if (scheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::updateVisuals);
         }
+    }
 
-        synchronized public void increment() {
-            ++active;
-            progress.set(0.0);
+    private void updateVisuals() {
+        scheduled.set(false);
+        double completion = 0.;
+        int counted = 0;
+        int running = 0;
+        int paused = 0;
+        int waiting = 0;
+        JobScheduler.Job latest = null;
+        for (var job : batch.values()) {
+            final JobScheduler.Status state = job.getStatus();
+            if (state == JobScheduler.Status.CANCELLED) {
+                continue;
+            }
+            completion += job.getFraction();
+            ++counted;
+            if (state == JobScheduler.Status.RUNNING) {
+                ++running;
+                latest = latest == null || job.getId() > latest.getId() ? job : latest;
+            }
+            else if (state == JobScheduler.Status.PAUSED) {
+                ++paused;
+            }
+            else if (state == JobScheduler.Status.QUEUED) {
+                ++waiting;
+            }
         }
-
-        public ProgressableTask.TaskPhase[] getPhases() {
-            return phases;
+        progress.setProgress(counted == 0 ? 0. : completion / counted);
+        if (latest == null) {
+            if (paused > 0) {
+                status.setText("Paused " + paused + " job(s)...");
+            }
+            else if (counted == 0 && !batch.isEmpty()) {
+                status.setText("Cancelled...");
+            }
+            return;
+        }
+        if (batch.size() == 1) {
+            status.setText(latest.getMessage());
+        }
+        else {
+            status.setText(latest.getMessage() + " (" + running + " running, " + paused + " paused, " + waiting + " queued)");
         }
     }
 
-    private final AtomicReference<Double> completion = new AtomicReference<>(0.);
-    private final AtomicBoolean alive = new AtomicBoolean(true);
-    private PhaseProgress forward;
-
-    public TaskProcessor(ProgressBar progress, Label status, ProgressableTask task) {
-        this.progress = progress;
-        this.status = status;
-        this.task = task;
+    public void pauseAll() {
+        scheduler.pauseAll();
     }
 
-    @Override
-    public void run() {
-        try {
-            final var phases = task.getPhases();
-            forward = new PhaseProgress(completion, phases);
-            final Thread polling = new Thread(this::pollUpdates);
-            polling.start();
-
-            for (var phase : phases) {
-                updateVisuals(phase.message, phase.progress);
-                phase.run(completion);
-
-                try {
-                    Thread.sleep(67);
-                } catch (InterruptedException ignored) {
-
-                }
-                forward.increment();
-            }
-        } catch (Exception except) {
-            Platform.runLater(() -> {
-                status.setText("Stopped decoding...");
-                progress.setProgress(0.);
-                final Alert alert = new Alert(Alert.AlertType.ERROR, except.getMessage(), ButtonType.OK);
-                final Stage stage = (Stage)alert.getDialogPane().getScene().getWindow();
-                stage.getIcons().addAll(App.STAGE_STACK.peek().getIcons());
-                alert.showAndWait();
-            });
-        } finally {
-            alive.set(false);
-            task.cleanup();
-        }
+    public void resumeAll() {
+        scheduler.resumeAll();
     }
 
-    private void updateVisuals(final String string, final Double val) {
-        Platform.runLater(new Runnable() {
-            @Override
-            public void run() {
-                status.setText(string);
-                progress.setProgress(val);
-            }
-        });
+    public void cancelAll() {
+        scheduler.cancelAll();
     }
 
-    private void pollUpdates() {
-        while (alive.get()) {
-            final var packet = forward.get();
-            final var phases = forward.getPhases();
-
-            if (packet.active + 1 < phases.length) {
-                final double baseline = phases[packet.active].progress;
-                final double nextBaseline = phases[packet.active + 1].progress;
-                final double completion = baseline + (nextBaseline - baseline) * packet.getProgress();
-                Platform.runLater(() -> {
-                    progress.setProgress(completion);
-                });
-            }
-            try {
-                Thread.sleep(16);
-            } catch (InterruptedException ignored) {
-
-            }
-        }
+    private void report(JobScheduler.Job job) {
+        final Exception except = job.getError();
+        Platform.runLater(() -> {
+            status.setText("Stopped " + job.getName() + "...");
+            final Alert alert = new Alert(Alert.AlertType.ERROR, except.getMessage(), ButtonType.OK);
+            final Stage stage = (Stage)alert.getDialogPane().getScene().getWindow();
+            stage.getIcons().addAll(App.STAGE_STACK.peek().getIcons());
+            alert.showAndWait();
+        });
     }
 }
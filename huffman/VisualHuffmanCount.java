@@ -4,7 +4,6 @@ import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.scene.control.CheckMenuItem;
 
-import java.util.concurrent.atomic.AtomicReference;
 
 public class VisualHuffmanCount extends ProgressableTask {
     private final HuffmanCoding encoder = new HuffmanCoding();
@@ -15,7 +14,7 @@ public class VisualHuffmanCount extends ProgressableTask {
     private final TaskPhase[] phases = new TaskPhase[] {
         new TaskPhase("Counting character occurrences...", 0.0, this::countCharacters),
         new TaskPhase("Updating character count tab...", 0.8, this::updateCharacterCount),
-        new TaskPhase("Finished counting characters...", 1., (AtomicReference<Double> ignored) -> {
+        new TaskPhase("Finished counting characters...", 1., (Progress ignored) -> {
             cleanup();
         })
     };
@@ -24,6 +23,7 @@ public class VisualHuffmanCount extends ProgressableTask {
         this.counts = counts;
         this.encodings = encodings;
         this.source = source;
+        this.encoder.setCache(HistogramCache.SHARED);
         this.force = forced;
     }
 
@@ -37,17 +37,15 @@ public class VisualHuffmanCount extends ProgressableTask {
 
     }
 
-    private void countCharacters(AtomicReference<Double> progress) {
+    private void countCharacters(Progress progress) {
         encoder.readCounts(source, progress);
     }
 
-    private void updateCharacterCount(AtomicReference<Double> progress) {
+    private void updateCharacterCount(Progress progress) {
         Platform.runLater(() -> {
             counts.clear();
 
-            for (var entry : encoder.getCounter()) {
-                counts.add(entry.toString());
-            }
+            encoder.getCounter().forEach((symbol, count) -> counts.add(new Table.TablePair<>(symbol, count).toString()));
         });
     }
 }
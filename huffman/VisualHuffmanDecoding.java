@@ -3,7 +3,6 @@ package huffman;
 import javafx.application.Platform;
 import javafx.collections.ObservableList;
 
-import java.util.concurrent.atomic.AtomicReference;
 
 public class VisualHuffmanDecoding extends ProgressableTask {
     private final HuffmanCoding encoder = new HuffmanCoding();
@@ -18,7 +17,7 @@ public class VisualHuffmanDecoding extends ProgressableTask {
         new TaskPhase("Extracting huffman tree...", 0.08, this::decodeStep),
         new TaskPhase("Update character encoding tab...", 0.18, this::updateEncodingTab),
         new TaskPhase("Decoding file...", .2, this::decodeStep),
-        new TaskPhase("Finished decoding file...", 1., (AtomicReference<Double> ignored) -> {
+        new TaskPhase("Finished decoding file...", 1., (Progress ignored) -> {
             cleanup();
         })
     };
@@ -32,12 +31,8 @@ public class VisualHuffmanDecoding extends ProgressableTask {
 
     @Override
     public void cleanup() {
-        decode.cleanup();
-    }
-
-    public static class InvalidHuffman extends RuntimeException {
-        InvalidHuffman() {
-            super("Error reading requested file, file has an invalid signature that doesn't match huffman encoding.");
+        if (decode != null) {
+            decode.cleanup();
         }
     }
 
@@ -48,7 +43,7 @@ public class VisualHuffmanDecoding extends ProgressableTask {
         this.encodings = encodings;
     }
 
-    private void updateEncodingTab(AtomicReference<Double> progress) {
+    private void updateEncodingTab(Progress progress) {
         Platform.runLater(() -> {
             encodings.clear();
 
@@ -58,11 +53,11 @@ public class VisualHuffmanDecoding extends ProgressableTask {
         });
     }
 
-    private void initialize(AtomicReference<Double> progress) {
+    private void initialize(Progress progress) {
         decode = encoder.getDecoder(source, destination);
     }
 
-    private void decodeStep(AtomicReference<Double> progress) throws Exception {
+    private void decodeStep(Progress progress) throws Exception {
         decode.getPhases()[decodeStep++].run(progress);
     }
 }
@@ -4,13 +4,13 @@ import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.scene.control.CheckMenuItem;
 
-import java.util.concurrent.atomic.AtomicReference;
 
 public class VisualHuffmanEncoding extends ProgressableTask {
     private final HuffmanCoding encoder = new HuffmanCoding();
     private final ObservableList<String> counts;
     private final ObservableList<String> encodings;
     private final CheckMenuItem force;
+    private final CheckMenuItem legacy;
     private final String source;
     private final String destination;
     private HuffmanCoding.Encode encode;
@@ -25,7 +25,7 @@ public class VisualHuffmanEncoding extends ProgressableTask {
         new TaskPhase("Verifying encoding size...", 0.42, this::verifyEncodingSize),
         new TaskPhase("Update character encoding tab...", 0.43, this::updateCharacterEncoding),
         new TaskPhase("Writing to destination...", .45, this::encodeStep),
-        new TaskPhase("Finished encoding file...", 1., (AtomicReference<Double> ignored) -> {
+        new TaskPhase("Finished encoding file...", 1., (Progress ignored) -> {
             cleanup();
         })
     };
@@ -36,12 +36,14 @@ public class VisualHuffmanEncoding extends ProgressableTask {
         }
     }
 
-    public VisualHuffmanEncoding(CheckMenuItem forced, ObservableList<String> counts, ObservableList<String> encodings, String source, String destination) {
+    public VisualHuffmanEncoding(CheckMenuItem forced, CheckMenuItem legacy, ObservableList<String> counts, ObservableList<String> encodings, String source, String destination) {
         this.counts = counts;
         this.encodings = encodings;
         this.source = source;
+        this.encoder.setCache(HistogramCache.SHARED);
         this.destination = destination;
         this.force = forced;
+        this.legacy = legacy;
     }
 
     @Override
@@ -51,20 +53,20 @@ public class VisualHuffmanEncoding extends ProgressableTask {
 
     @Override
     public void cleanup() {
-        encode.cleanup();
+        if (encode != null) {
+            encode.cleanup();
+        }
     }
 
-    private void updateCharacterCount(AtomicReference<Double> progress) {
+    private void updateCharacterCount(Progress progress) {
         Platform.runLater(() -> {
             counts.clear();
 
-            for (var entry : encoder.getCounter()) {
-                counts.add(entry.toString());
-            }
+            encoder.getCounter().forEach((symbol, count) -> counts.add(new Table.TablePair<>(symbol, count).toString()));
         });
     }
 
-    private void updateCharacterEncoding(AtomicReference<Double> progress) {
+    private void updateCharacterEncoding(Progress progress) {
         Platform.runLater(() -> {
             encodings.clear();
 
@@ -74,16 +76,22 @@ public class VisualHuffmanEncoding extends ProgressableTask {
         });
     }
 
-    private void initialize(AtomicReference<Double> progress) {
+    private void initialize(Progress progress) {
+        if (legacy.isSelected()) {
+            encoder.setHeaderFormat(HuffmanCoding.HeaderFormat.V1);
+        }
         encode = encoder.getEncoder(source, destination);
     }
 
-    private void encodeStep(AtomicReference<Double> progress) throws Exception {
+    private void encodeStep(Progress progress) throws Exception {
         encode.getPhases()[encodeStep++].run(progress);
     }
 
-    private void verifyEncodingSize(AtomicReference<Double> progress) {
-        final long compressedBytes = encoder.getTotalCompressionBytes();
+    private void verifyEncodingSize(Progress progress) {
+        if (encoder.isAdaptive() || encoder.getHeaderFormat() == HuffmanCoding.HeaderFormat.V2) {
+            return;
+        }
+        final long compressedBytes = encoder.getTotalCompressionBytes() + encoder.getEstimatedLossBytes();
         final long uncompressedBytes = encoder.getUncompressedBytes();
         if (!force.isSelected() && compressedBytes > uncompressedBytes) {
             throw new PoorEncodingException(compressedBytes, uncompressedBytes);